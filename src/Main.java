@@ -1,6 +1,9 @@
 import auth.User;
+import client.FileClient;
 import node.SyncClient;
 import rmi.CoordinatorService;
+import rmi.FileInfo;
+import rmi.PatchOp;
 import java.rmi.Naming;
 import java.rmi.RemoteException;
 import java.util.*;
@@ -118,6 +121,7 @@ public class Main {
             System.out.println(" Login successful. Token: " + token);
 
             User user = coordinator.getUserInfo(token);
+            FileClient files = new FileClient(coordinator, token);
             Set<String> perms = new HashSet<>(user.getPermissions());
 
             while (true) {
@@ -143,6 +147,8 @@ public class Main {
                 }
                 System.out.println(optionNumber + ". Request a file from another department");
                 menu.put(optionNumber++, "request");
+                System.out.println(optionNumber + ". Search files by name");
+                menu.put(optionNumber++, "search");
                 System.out.println(optionNumber + ". Logout");
                 menu.put(optionNumber, "logout");
 
@@ -162,7 +168,7 @@ public class Main {
                         System.out.print("Enter file content: ");
                         String writeContent = scanner.nextLine();
                         try {
-                            boolean written = coordinator.writeFile(token, writeName, writeContent.getBytes());
+                            boolean written = files.write(writeName, writeContent.getBytes());
                             System.out.println(written ? " File written." : " Write failed.");
                         } catch (Exception e) {
                             System.out.println(" Write error: " + e.getMessage());
@@ -173,7 +179,7 @@ public class Main {
                         System.out.print("Enter file name (section/filename.txt): ");
                         String readName = scanner.nextLine();
                         try {
-                            byte[] data = coordinator.readFile(token, readName);
+                            byte[] data = files.read(readName);
                             System.out.println(" File content:\n" + new String(data));
                         } catch (Exception e) {
                             System.out.println(" Read error: " + e.getMessage());
@@ -196,14 +202,17 @@ public class Main {
                         String editFile = scanner.nextLine();
 
                         byte[] existingBytes;
+                        long baseVersion;
                         try {
-                            existingBytes = coordinator.readFile(token, editFile);
+                            baseVersion = coordinator.getFileVersion(token, editFile);
+                            existingBytes = files.read(editFile);
                         } catch (Exception e) {
                             System.out.println(" Read error: " + e.getMessage());
                             break;
                         }
 
-                        List<String> lines = new ArrayList<>(List.of(new String(existingBytes).split("\n")));
+                        List<String> lines = splitLines(new String(existingBytes));
+                        List<PatchOp> ops = new ArrayList<>();
 
                         while (true) {
                             System.out.println("\n Current content:");
@@ -218,28 +227,42 @@ public class Main {
                             switch (cmd) {
                                 case "a":
                                     System.out.print("Enter new line to add: ");
-                                    lines.add(scanner.nextLine());
+                                    String added = scanner.nextLine();
+                                    lines.add(added);
+                                    ops.add(PatchOp.append(added));
                                     break;
                                 case "d":
                                     System.out.print("Enter line number to delete: ");
                                     int del = Integer.parseInt(scanner.nextLine()) - 1;
-                                    if (del >= 0 && del < lines.size()) lines.remove(del);
+                                    if (del >= 0 && del < lines.size()) {
+                                        lines.remove(del);
+                                        ops.add(PatchOp.delete(del));
+                                    }
                                     break;
                                 case "r":
                                     System.out.print("Enter line number to replace: ");
                                     int rep = Integer.parseInt(scanner.nextLine()) - 1;
                                     if (rep >= 0 && rep < lines.size()) {
                                         System.out.print("Enter new content: ");
-                                        lines.set(rep, scanner.nextLine());
+                                        String replaced = scanner.nextLine();
+                                        lines.set(rep, replaced);
+                                        ops.add(PatchOp.replace(rep, replaced));
                                     }
                                     break;
                                 case "s":
-                                    String updated = String.join("\n", lines);
+                                    if (ops.isEmpty()) {
+                                        System.out.println(" No changes to save.");
+                                        break;
+                                    }
                                     try {
-                                        boolean edited = coordinator.editFile(token, editFile, updated.getBytes());
+                                        boolean edited = coordinator.applyPatch(token, editFile, baseVersion, ops);
                                         System.out.println(edited ? "File updated." : " Update failed.");
-                                    } catch (Exception e) {
-                                        System.out.println(" Update error: " + e.getMessage());
+                                    } catch (RemoteException e) {
+                                        if ("STALE_VERSION".equals(e.getMessage())) {
+                                            System.out.println(" File was changed by someone else. Open it again and redo your edits.");
+                                        } else {
+                                            System.out.println(" Update error: " + e.getMessage());
+                                        }
                                     }
                                     break;
                                 default:
@@ -269,6 +292,22 @@ public class Main {
                         }
                         break;
 
+                    case "search":
+                        System.out.print("Enter name pattern (e.g. report*, *.txt): ");
+                        String pattern = scanner.nextLine();
+                        try {
+                            List<FileInfo> found = coordinator.searchFiles(token, pattern);
+                            if (found.isEmpty()) {
+                                System.out.println(" No files match.");
+                            }
+                            for (FileInfo info : found) {
+                                System.out.println(" - " + info.getName() + " (" + info.getSize() + " bytes)");
+                            }
+                        } catch (RemoteException e) {
+                            System.out.println(" Search failed: " + e.getMessage());
+                        }
+                        break;
+
                     case "logout":
                         coordinator.logout(token);
                         System.out.println(" Logged out successfully.");
@@ -280,4 +319,11 @@ public class Main {
             System.err.println(" Login or session error: " + e.getMessage());
         }
     }
+
+    // Matches the node's line model: '\n' separates lines and a trailing newline adds no extra line.
+    private static List<String> splitLines(String content) {
+        List<String> lines = new ArrayList<>(Arrays.asList(content.split("\n", -1)));
+        if (!lines.isEmpty() && lines.get(lines.size() - 1).isEmpty()) lines.remove(lines.size() - 1);
+        return lines;
+    }
 }
@@ -0,0 +1,164 @@
+package auth;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class SessionStore {
+
+    private static final long TOUCH_GRANULARITY_MS = 1000;
+
+    public static class Session {
+        private final String token;
+        private final String username;
+        private final long createdAt;
+        private volatile long lastAccess;
+        volatile long journaledAccess;
+
+        Session(String token, String username, long createdAt, long lastAccess) {
+            this.token = token;
+            this.username = username;
+            this.createdAt = createdAt;
+            this.lastAccess = lastAccess;
+            this.journaledAccess = lastAccess;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        public long getLastAccess() {
+            return lastAccess;
+        }
+    }
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final long idleTtlMillis;
+    private final long absoluteTtlMillis;
+    private final int maxSessions;
+    private final Consumer<Session> onEvict;
+    private final ScheduledExecutorService evictor;
+
+    public SessionStore(long idleTtlMillis, long absoluteTtlMillis, int maxSessions, Consumer<Session> onEvict) {
+        this.idleTtlMillis = idleTtlMillis;
+        this.absoluteTtlMillis = absoluteTtlMillis;
+        this.maxSessions = maxSessions;
+        this.onEvict = onEvict;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, Math.min(idleTtlMillis / 4, 60000));
+        evictor.scheduleAtFixedRate(this::evictExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Session create(String username) {
+        long now = System.currentTimeMillis();
+        return restore(UUID.randomUUID().toString(), username, now, now);
+    }
+
+    // Replaces any session already held under the token: the latest record of a session is the true one.
+    public Session restore(String token, String username, long createdAt, long lastAccess) {
+        if (sessions.size() >= maxSessions) {
+            evictExpired();
+            if (sessions.size() >= maxSessions) {
+                evictLeastRecentlyUsed();
+            }
+        }
+        Session session = new Session(token, username, createdAt, lastAccess);
+        sessions.put(token, session);
+        return session;
+    }
+
+    // Replayed accesses only ever move a session's idle clock forward.
+    public void restoreAccess(String token, long lastAccess) {
+        Session session = sessions.get(token);
+        if (session != null && lastAccess > session.lastAccess) {
+            session.lastAccess = lastAccess;
+            session.journaledAccess = lastAccess;
+        }
+    }
+
+    public Session get(String token) {
+        if (token == null) return null;
+        Session session = sessions.get(token);
+        if (session == null) return null;
+
+        long now = System.currentTimeMillis();
+        if (isExpired(session, now)) {
+            evict(session);
+            return null;
+        }
+        if (now - session.lastAccess > TOUCH_GRANULARITY_MS) {
+            session.lastAccess = now;
+        }
+        return session;
+    }
+
+    public Session invalidate(String token) {
+        return token == null ? null : sessions.remove(token);
+    }
+
+    public Collection<Session> values() {
+        return sessions.values();
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    public void shutdown() {
+        evictor.shutdownNow();
+    }
+
+    private boolean isExpired(Session session, long now) {
+        return now - session.lastAccess > idleTtlMillis || now - session.createdAt > absoluteTtlMillis;
+    }
+
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+        for (Session session : sessions.values()) {
+            if (isExpired(session, now) && evict(session)) {
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            System.out.println("[SessionStore] Evicted " + evicted + " expired session(s). Active: " + sessions.size());
+        }
+    }
+
+    private void evictLeastRecentlyUsed() {
+        Session oldest = null;
+        for (Session session : sessions.values()) {
+            if (oldest == null || session.lastAccess < oldest.lastAccess) {
+                oldest = session;
+            }
+        }
+        if (oldest != null) {
+            evict(oldest);
+        }
+    }
+
+    private boolean evict(Session session) {
+        if (sessions.remove(session.token, session)) {
+            if (onEvict != null) onEvict.accept(session);
+            return true;
+        }
+        return false;
+    }
+}
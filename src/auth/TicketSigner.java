@@ -0,0 +1,75 @@
+package auth;
+
+import rmi.AccessTicket;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// HMAC-SHA256 over the ticket fields with a secret shared by the coordinator and every node.
+public class TicketSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final AtomicLong grants = new AtomicLong(System.currentTimeMillis() * 1000);
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+    public TicketSigner(String secret) {
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    // There is deliberately no built-in fallback: a key compiled into the jar would let anyone mint tickets.
+    public static TicketSigner fromSystemProperties() {
+        String secret = System.getProperty("ds.ticketSecret", System.getenv("DS_TICKET_SECRET"));
+        if (secret == null || secret.trim().isEmpty()) {
+            throw new IllegalStateException("Ticket secret missing: set -Dds.ticketSecret or DS_TICKET_SECRET"
+                    + " to the same value on the coordinator and every node.");
+        }
+        return new TicketSigner(secret);
+    }
+
+    public AccessTicket issue(String username, String fileName, AccessTicket.Operation operation,
+                              List<String> nodeNames, long ttlMs) {
+        long grantId = grants.incrementAndGet();
+        long expiresAt = System.currentTimeMillis() + ttlMs;
+        byte[] signature = sign(grantId, username, fileName, operation, nodeNames, expiresAt);
+        return new AccessTicket(grantId, username, fileName, operation, nodeNames, expiresAt, signature);
+    }
+
+    // Checks the signature only; callers decide whether an expired ticket is still acceptable.
+    public boolean isAuthentic(AccessTicket ticket) {
+        if (ticket == null || ticket.getSignature() == null) return false;
+        byte[] expected = sign(ticket.getGrantId(), ticket.getUsername(), ticket.getFileName(),
+                ticket.getOperation(), ticket.getNodeNames(), ticket.getExpiresAt());
+        return MessageDigest.isEqual(expected, ticket.getSignature());
+    }
+
+    public boolean verify(AccessTicket ticket, AccessTicket.Operation operation, String nodeName) {
+        return isAuthentic(ticket)
+                && ticket.getOperation() == operation
+                && ticket.getExpiresAt() >= System.currentTimeMillis()
+                && ticket.getNodeNames().contains(nodeName);
+    }
+
+    private byte[] sign(long grantId, String username, String fileName, AccessTicket.Operation operation,
+                        List<String> nodeNames, long expiresAt) {
+        String payload = grantId + "\n" + username + "\n" + fileName + "\n" + operation + "\n"
+                + String.join(",", nodeNames) + "\n" + expiresAt;
+        return macs.get().doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC unavailable", e);
+        }
+    }
+}
@@ -12,7 +12,7 @@ public class User implements Serializable {
     private String role;
 
     private String department;
-    private String token;
+    private volatile String token;
     private List<String> permissions;
 
     public User(String username, String password, String role, String department, String token, List<String> permissions) {
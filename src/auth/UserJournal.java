@@ -0,0 +1,192 @@
+package auth;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class UserJournal {
+
+    private static class Pending {
+        final String record;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(String record) {
+            this.record = record;
+        }
+    }
+
+    private final Path path;
+    private final int compactThreshold;
+    private final Callable<List<String>> snapshotter;
+    private final long appendTimeoutMs;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private volatile boolean compactRequested;
+    private volatile Thread writer;
+    // Why the writer stopped, once it has; appends then fail at once instead of queueing for nobody.
+    private volatile Throwable stopped;
+    private FileChannel channel;
+    private int records;
+
+    public UserJournal(Path path, int compactThreshold, long appendTimeoutMs, Callable<List<String>> snapshotter) {
+        this.path = path;
+        this.compactThreshold = compactThreshold;
+        this.appendTimeoutMs = appendTimeoutMs;
+        this.snapshotter = snapshotter;
+    }
+
+    public List<String> readAll() throws IOException {
+        if (!Files.exists(path)) return new ArrayList<>();
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        records = lines.size();
+        return lines;
+    }
+
+    public void start() throws IOException {
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        Thread thread = new Thread(this::writeLoop, "user-journal-writer");
+        thread.setDaemon(true);
+        writer = thread;
+        thread.start();
+    }
+
+    // Returns once the record is durable; false when it is not within appendTimeoutMs or the writer is gone.
+    public boolean append(String record) {
+        Pending pending = new Pending(record);
+        if (!submit(pending)) return false;
+        try {
+            pending.done.get(appendTimeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            System.err.println("[UserJournal] Append not durable after " + appendTimeoutMs + " ms: " + record);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            System.err.println("[UserJournal] Append failed: " + e.getCause().getMessage());
+            return false;
+        }
+    }
+
+    // Queues a record without waiting for its fsync. For records whose loss only makes a session expire early.
+    public void enqueue(String record) {
+        submit(new Pending(record));
+    }
+
+    private boolean submit(Pending pending) {
+        if (!running()) {
+            System.err.println("[UserJournal] Writer not running, dropped: " + pending.record);
+            return false;
+        }
+        queue.add(pending);
+        // Checked again after queueing: either the writer drains this entry on its way out, or we see it gone.
+        if (!running()) {
+            pending.done.completeExceptionally(new IOException("Journal writer stopped", stopped));
+        }
+        return true;
+    }
+
+    private boolean running() {
+        Thread thread = writer;
+        return thread != null && thread.isAlive() && stopped == null;
+    }
+
+    public void compact() {
+        compactRequested = true;
+        queue.add(new Pending(null));
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        try {
+            writeBatches(batch);
+        } catch (Throwable e) {
+            stopped = e;
+            System.err.println("[UserJournal] Writer stopped, failing pending records: " + e);
+            IOException failure = new IOException("Journal writer stopped", e);
+            queue.drainTo(batch);
+            for (Pending p : batch) p.done.completeExceptionally(failure);
+            if (e instanceof Error) throw (Error) e;
+        }
+    }
+
+    private void writeBatches(List<Pending> batch) throws InterruptedException {
+        while (true) {
+            batch.add(queue.take());
+            queue.drainTo(batch);
+
+            try {
+                writeBatch(batch);
+                for (Pending p : batch) p.done.complete(null);
+            } catch (IOException e) {
+                for (Pending p : batch) p.done.completeExceptionally(e);
+            }
+            batch.clear();
+
+            if (compactRequested || records >= compactThreshold) {
+                compactRequested = false;
+                compactNow();
+            }
+        }
+    }
+
+    private void writeBatch(List<Pending> batch) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int count = 0;
+        for (Pending p : batch) {
+            if (p.record != null) {
+                sb.append(p.record).append('\n');
+                count++;
+            }
+        }
+        if (count == 0) return;
+
+        ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        records += count;
+    }
+
+    private void compactNow() {
+        try {
+            List<String> seed = snapshotter.call();
+
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(tmp, seed, StandardCharsets.UTF_8);
+            try (FileChannel tmpChannel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                tmpChannel.force(true);
+            }
+
+            channel.close();
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            records = seed.size();
+            System.out.println("[UserJournal] Compacted journal into snapshot (" + records + " live record(s) kept).");
+        } catch (Exception e) {
+            System.err.println("[UserJournal] Compaction failed: " + e.getMessage());
+            e.printStackTrace();
+            try {
+                if (!channel.isOpen()) {
+                    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                }
+            } catch (IOException reopen) {
+                System.err.println("[UserJournal] Failed to reopen journal: " + reopen.getMessage());
+            }
+        }
+    }
+}
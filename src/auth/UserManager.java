@@ -1,49 +1,61 @@
 package auth;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class UserManager {
 
     private static final String FILE_PATH = "data/users.txt";
-    private final Map<String, User> users = new HashMap<>();
+    private static final String JOURNAL_PATH = "data/users.journal";
+    private static final int JOURNAL_COMPACT_THRESHOLD = Integer.getInteger("auth.journal.compactThreshold", 10000);
+    private static final long JOURNAL_APPEND_TIMEOUT_MS = Long.getLong("auth.journal.appendTimeoutMs", 10 * 1000L);
+    private static final long SESSION_IDLE_TTL_MS = Long.getLong("auth.session.idleTtlMs", 30 * 60 * 1000L);
+    private static final long SESSION_ABSOLUTE_TTL_MS = Long.getLong("auth.session.absoluteTtlMs", 12 * 60 * 60 * 1000L);
+    private static final int MAX_SESSIONS = Integer.getInteger("auth.session.max", 100000);
+    // A restart can cost a session at most this much of its idle time.
+    private static final long SESSION_TOUCH_JOURNAL_MS = Long.getLong("auth.session.touchJournalMs", 60 * 1000L);
+
+    private static final String REGISTER = "REGISTER";
+    private static final String LOGIN = "LOGIN";
+    private static final String LOGOUT = "LOGOUT";
+    private static final String TOUCH = "TOUCH";
+    private static final String EXPIRE = "EXPIRE";
+
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+    private final SessionStore sessions = new SessionStore(
+            SESSION_IDLE_TTL_MS, SESSION_ABSOLUTE_TTL_MS, MAX_SESSIONS, this::onSessionEvicted);
+    private final UserJournal journal = new UserJournal(
+            Paths.get(JOURNAL_PATH), JOURNAL_COMPACT_THRESHOLD, JOURNAL_APPEND_TIMEOUT_MS, this::writeSnapshot);
 
     public UserManager() {
         loadUsers();
+        try {
+            for (String record : journal.readAll()) {
+                replay(record);
+            }
+            sessions.evictExpired();
+            journal.start();
+            journal.compact();
+        } catch (IOException e) {
+            // Without the journal no register, login or logout could be made durable; refuse to start.
+            throw new IllegalStateException("Cannot open user journal " + JOURNAL_PATH + ": " + e.getMessage(), e);
+        }
     }
 
-    public void loadUsers() {
-        File file = new File("data/users.txt");
+    public synchronized void loadUsers() {
+        File file = new File(FILE_PATH);
         if (!file.exists()) return;
 
         try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
             String line;
             while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(";");
-                if (parts.length < 3) continue;
-
-                String username = parts[0];
-                String password = parts[1];
-                String role = parts[2];
-
-                String department = parts.length > 3 ? parts[3] : "";
-                String token = parts.length > 4 ? parts[4] : "";
-                String permissionsString = parts.length > 5 ? parts[5] : "";
-
-                List<String> permissions = new ArrayList<>();
-                if (!permissionsString.isEmpty()) {
-                    permissions = Arrays.asList(permissionsString.split(","));
-                }
-
-                if (role.equals("employee")) {
-                    if (department.isEmpty() || permissions.isEmpty()) {
-                        System.err.println("️ Ignoring invalid employee entry (missing department or permissions): " + username);
-                        continue;
-                    }
-                }
+                User user = parseUser(line);
+                if (user == null) continue;
 
-                User user = new User(username, password, role, department, token, permissions);
-                users.put(username, user);
+                users.put(user.getUsername(), user);
             }
 
         } catch (IOException e) {
@@ -51,29 +63,10 @@ public class UserManager {
             e.printStackTrace();
         }
     }
-    public void saveUsers() {
-        File file = new File("data/users.txt");
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-            for (User user : users.values()) {
-                if (user.getRole().equals("manager")) {
-                    writer.write(String.format("%s;%s;%s;;;%n",
-                            user.getUsername(),
-                            user.getPassword(),
-                            user.getRole()
-                    ));
-                } else {
-                    String permissionsStr = String.join(",", user.getPermissions());
-                    writer.write(String.format("%s;%s;%s;%s;%s;%s%n",
-                            user.getUsername(),
-                            user.getPassword(),
-                            user.getRole(),
-                            user.getDepartment(),
-                            user.getToken() == null ? "" : user.getToken(),
-                            permissionsStr
-                    ));
-                }
-            }
+    public synchronized void saveUsers() {
+        try {
+            writeUsersFile();
         } catch (IOException e) {
             System.err.println(" Error saving users: " + e.getMessage());
             e.printStackTrace();
@@ -87,12 +80,14 @@ public class UserManager {
 
 
     public boolean registerUser(User user) {
-        if (users.containsKey(user.getUsername())) {
+        if (users.putIfAbsent(user.getUsername(), user) != null) {
             System.out.println("[UserManager] Username already exists: " + user.getUsername());
             return false;
         }
-
-        users.put(user.getUsername(), user);
+        if (!journal.append(REGISTER + ";" + formatUser(user))) {
+            users.remove(user.getUsername(), user);
+            return false;
+        }
         return true;
     }
 
@@ -100,21 +95,173 @@ public class UserManager {
     public User login(String username, String password) {
         User user = users.get(username);
         if (user != null && user.getPassword().equals(password)) {
-            String token = UUID.randomUUID().toString();
-            user.setToken(token);
-            saveUsers();
+            SessionStore.Session session = sessions.create(username);
+            user.setToken(session.getToken());
+            if (!journal.append(LOGIN + ";" + session.getToken() + ";" + username + ";" + session.getCreatedAt())) {
+                sessions.invalidate(session.getToken());
+                if (session.getToken().equals(user.getToken())) user.setToken(null);
+                return null;
+            }
             return user;
         }
         return null;
     }
+
     public User getUserByToken(String token) {
-        for (User user : users.values()) {
-            if (token != null && token.equals(user.getToken())) {
-                return user;
+        SessionStore.Session session = sessions.get(token);
+        if (session == null) return null;
+
+        long lastAccess = session.getLastAccess();
+        if (lastAccess - session.journaledAccess >= SESSION_TOUCH_JOURNAL_MS) {
+            session.journaledAccess = lastAccess;
+            journal.enqueue(TOUCH + ";" + token + ";" + lastAccess);
+        }
+        return users.get(session.getUsername());
+    }
+
+    public User logout(String token) {
+        SessionStore.Session session = sessions.invalidate(token);
+        if (session == null) return null;
+
+        User user = users.get(session.getUsername());
+        if (user != null && token.equals(user.getToken())) {
+            user.setToken(null);
+        }
+        if (!journal.append(LOGOUT + ";" + token)) {
+            // Logged out here regardless; after a restart the session only lives until its TTL.
+            System.err.println("[UserManager] Logout not journaled for " + session.getUsername());
+        }
+        return user;
+    }
+
+    private void onSessionEvicted(SessionStore.Session session) {
+        journal.enqueue(EXPIRE + ";" + session.getToken());
+        clearToken(session);
+    }
+
+    private void clearToken(SessionStore.Session session) {
+        User user = users.get(session.getUsername());
+        if (user != null && session.getToken().equals(user.getToken())) {
+            user.setToken(null);
+        }
+    }
+
+    private void replay(String record) {
+        String[] parts = record.split(";", 2);
+        if (parts.length < 2) return;
+
+        switch (parts[0]) {
+            case REGISTER: {
+                User user = parseUser(parts[1]);
+                if (user != null) users.putIfAbsent(user.getUsername(), user);
+                break;
+            }
+            case LOGIN: {
+                String[] fields = parts[1].split(";");
+                if (fields.length < 3 || !users.containsKey(fields[1])) return;
+                try {
+                    // Snapshots carry the last access; a plain login was last used when it was created.
+                    long createdAt = Long.parseLong(fields[2]);
+                    long lastAccess = fields.length > 3 ? Long.parseLong(fields[3]) : createdAt;
+                    sessions.restore(fields[0], fields[1], createdAt, lastAccess);
+                    users.get(fields[1]).setToken(fields[0]);
+                } catch (NumberFormatException e) {
+                    System.err.println("[UserManager] Skipping corrupt journal record: " + record);
+                }
+                break;
+            }
+            case TOUCH: {
+                String[] fields = parts[1].split(";");
+                if (fields.length < 2) return;
+                try {
+                    sessions.restoreAccess(fields[0], Long.parseLong(fields[1]));
+                } catch (NumberFormatException e) {
+                    System.err.println("[UserManager] Skipping corrupt journal record: " + record);
+                }
+                break;
             }
+            case LOGOUT:
+            case EXPIRE:
+                logoutReplayed(parts[1]);
+                break;
+            default:
+                System.err.println("[UserManager] Skipping unknown journal record: " + record);
         }
-        return null;
     }
 
+    private void logoutReplayed(String token) {
+        SessionStore.Session session = sessions.invalidate(token);
+        if (session != null) clearToken(session);
+    }
+
+    private List<String> writeSnapshot() throws IOException {
+        synchronized (this) {
+            writeUsersFile();
+        }
+        List<String> live = new ArrayList<>();
+        for (SessionStore.Session session : sessions.values()) {
+            live.add(LOGIN + ";" + session.getToken() + ";" + session.getUsername() + ";"
+                    + session.getCreatedAt() + ";" + session.getLastAccess());
+        }
+        return live;
+    }
+
+    private void writeUsersFile() throws IOException {
+        Path target = Paths.get(FILE_PATH);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
 
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (User user : users.values()) {
+                writer.write(formatUser(user));
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private String formatUser(User user) {
+        if (user.getRole().equals("manager")) {
+            return String.format("%s;%s;%s;;;",
+                    user.getUsername(),
+                    user.getPassword(),
+                    user.getRole()
+            );
+        }
+        String permissionsStr = String.join(",", user.getPermissions());
+        return String.format("%s;%s;%s;%s;%s;%s",
+                user.getUsername(),
+                user.getPassword(),
+                user.getRole(),
+                user.getDepartment(),
+                "",
+                permissionsStr
+        );
+    }
+
+    private User parseUser(String line) {
+        String[] parts = line.split(";");
+        if (parts.length < 3) return null;
+
+        String username = parts[0];
+        String password = parts[1];
+        String role = parts[2];
+
+        // Column 4 held the session token in older files; sessions now come only from the journal.
+        String department = parts.length > 3 ? parts[3] : "";
+        String permissionsString = parts.length > 5 ? parts[5] : "";
+
+        List<String> permissions = new ArrayList<>();
+        if (!permissionsString.isEmpty()) {
+            permissions = Arrays.asList(permissionsString.split(","));
+        }
+
+        if (role.equals("employee")) {
+            if (department.isEmpty() || permissions.isEmpty()) {
+                System.err.println("️ Ignoring invalid employee entry (missing department or permissions): " + username);
+                return null;
+            }
+        }
+
+        return new User(username, password, role, department, null, permissions);
+    }
 }
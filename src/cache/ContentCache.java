@@ -0,0 +1,203 @@
+package cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Byte-budgeted W-TinyLFU: a small LRU window feeds a segmented LRU main area,
+// and a window victim only displaces main entries that are used less often.
+public class ContentCache<K> {
+
+    private enum Region { WINDOW, PROBATION, PROTECTED }
+
+    private static class Entry<K> {
+        final K key;
+        final long version;
+        final byte[] data;
+        Region region;
+
+        Entry(K key, long version, byte[] data) {
+            this.key = key;
+            this.version = version;
+            this.data = data;
+        }
+    }
+
+    private final long maxBytes;
+    private final long windowMax;
+    private final long protectedMax;
+    private final FrequencySketch sketch;
+
+    private final Map<K, Entry<K>> index = new HashMap<>();
+    private final LinkedHashMap<K, Entry<K>> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Entry<K>> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Entry<K>> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long windowBytes;
+    private long probationBytes;
+    private long protectedBytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ContentCache(long maxBytes, int expectedEntries) {
+        this.maxBytes = maxBytes;
+        this.windowMax = Math.max(1, maxBytes / 100);
+        this.protectedMax = (maxBytes - windowMax) * 8 / 10;
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    public synchronized byte[] get(K key, long version) {
+        sketch.increment(key);
+        Entry<K> entry = index.get(key);
+        if (entry == null || entry.version != version) {
+            if (entry != null) remove(entry);
+            misses++;
+            return null;
+        }
+
+        hits++;
+        switch (entry.region) {
+            case WINDOW:
+                window.get(key);
+                break;
+            case PROBATION:
+                promote(entry);
+                break;
+            case PROTECTED:
+                protectedSegment.get(key);
+                break;
+        }
+        return entry.data;
+    }
+
+    public synchronized void put(K key, long version, byte[] data) {
+        if (data.length > maxBytes - windowMax) return;
+
+        Entry<K> existing = index.get(key);
+        if (existing != null) remove(existing);
+
+        Entry<K> entry = new Entry<>(key, version, data);
+        entry.region = Region.WINDOW;
+        index.put(key, entry);
+        window.put(key, entry);
+        windowBytes += data.length;
+
+        while (windowBytes > windowMax && !window.isEmpty()) {
+            Entry<K> candidate = first(window);
+            window.remove(candidate.key);
+            windowBytes -= candidate.data.length;
+            admit(candidate);
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        Entry<K> entry = index.get(key);
+        if (entry != null) remove(entry);
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getBytes() {
+        return windowBytes + probationBytes + protectedBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized int getEntries() {
+        return index.size();
+    }
+
+    public synchronized String describe() {
+        long lookups = hits + misses;
+        double ratio = lookups == 0 ? 0 : 100.0 * hits / lookups;
+        return String.format("%d entries, %d/%d bytes, hits %d, misses %d (%.1f%% hit), evictions %d",
+                index.size(), getBytes(), maxBytes, hits, misses, ratio, evictions);
+    }
+
+    // Picks the victims that would make room first and only evicts them if the candidate beats every one;
+    // a rejected candidate leaves the main area untouched.
+    private void admit(Entry<K> candidate) {
+        long mainMax = maxBytes - windowMax;
+        int candidateFrequency = sketch.frequency(candidate.key);
+
+        long excess = probationBytes + protectedBytes + candidate.data.length - mainMax;
+        List<Entry<K>> victims = new ArrayList<>();
+        Iterator<Entry<K>> probationLru = probation.values().iterator();
+        Iterator<Entry<K>> protectedLru = protectedSegment.values().iterator();
+        while (excess > 0 && (probationLru.hasNext() || protectedLru.hasNext())) {
+            Entry<K> victim = probationLru.hasNext() ? probationLru.next() : protectedLru.next();
+            if (sketch.frequency(victim.key) >= candidateFrequency) break;
+            victims.add(victim);
+            excess -= victim.data.length;
+        }
+        if (excess > 0) {
+            index.remove(candidate.key);
+            evictions++;
+            return;
+        }
+
+        for (Entry<K> victim : victims) {
+            remove(victim);
+            evictions++;
+        }
+        candidate.region = Region.PROBATION;
+        probation.put(candidate.key, candidate);
+        probationBytes += candidate.data.length;
+    }
+
+    private void promote(Entry<K> entry) {
+        probation.remove(entry.key);
+        probationBytes -= entry.data.length;
+        entry.region = Region.PROTECTED;
+        protectedSegment.put(entry.key, entry);
+        protectedBytes += entry.data.length;
+
+        while (protectedBytes > protectedMax && protectedSegment.size() > 1) {
+            Entry<K> demoted = first(protectedSegment);
+            protectedSegment.remove(demoted.key);
+            protectedBytes -= demoted.data.length;
+            demoted.region = Region.PROBATION;
+            probation.put(demoted.key, demoted);
+            probationBytes += demoted.data.length;
+        }
+    }
+
+    private void remove(Entry<K> entry) {
+        index.remove(entry.key);
+        switch (entry.region) {
+            case WINDOW:
+                window.remove(entry.key);
+                windowBytes -= entry.data.length;
+                break;
+            case PROBATION:
+                probation.remove(entry.key);
+                probationBytes -= entry.data.length;
+                break;
+            case PROTECTED:
+                protectedSegment.remove(entry.key);
+                protectedBytes -= entry.data.length;
+                break;
+        }
+    }
+
+    private static <K> Entry<K> first(LinkedHashMap<K, Entry<K>> segment) {
+        Iterator<Entry<K>> it = segment.values().iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+}
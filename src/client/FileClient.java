@@ -0,0 +1,149 @@
+package client;
+
+import rmi.AccessGrant;
+import rmi.AccessTicket;
+import rmi.CoordinatorService;
+import rmi.DirectFileService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.RemoteException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Asks the coordinator for a ticket and replica locations, then moves the bytes to and from nodes directly.
+public class FileClient {
+
+    private static final ExecutorService POOL = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "file-client");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private interface NodeCall<T> {
+        T apply(String nodeName, DirectFileService node) throws Exception;
+    }
+
+    private final CoordinatorService coordinator;
+    private final String token;
+
+    public FileClient(CoordinatorService coordinator, String token) {
+        this.coordinator = coordinator;
+        this.token = token;
+    }
+
+    public byte[] read(String fileName) throws RemoteException {
+        AccessGrant grant = coordinator.authorizeRead(token, fileName);
+        if (grant.getSize() > grant.getChunkSize()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, grant.getSize()));
+            readTo(grant, out);
+            return out.toByteArray();
+        }
+
+        AccessTicket ticket = grant.getTicket();
+        for (DirectFileService node : grant.getNodes()) {
+            try {
+                return node.readFile(ticket);
+            } catch (RemoteException e) {
+                System.err.println(" Skipping node: " + e.getMessage());
+            }
+        }
+        throw new RemoteException(" File not found in any healthy node.");
+    }
+
+    // Streams the file chunk by chunk, failing over to the next replica mid-transfer if one drops out.
+    public long readTo(String fileName, OutputStream out) throws RemoteException {
+        return readTo(coordinator.authorizeRead(token, fileName), out);
+    }
+
+    public boolean write(String fileName, byte[] data) throws RemoteException {
+        AccessGrant grant = coordinator.authorizeWrite(token, fileName);
+        AccessTicket ticket = grant.getTicket();
+        List<String> landed = new ArrayList<>(onEachNode(grant, ticket.getNodeNames(), (name, node) -> {
+            node.writeFile(ticket, data);
+            return name;
+        }).keySet());
+        if (landed.isEmpty()) return false;
+        return coordinator.confirmWrite(token, ticket, landed, data.length);
+    }
+
+    public boolean upload(String fileName, Path source) throws IOException {
+        AccessGrant grant = coordinator.authorizeWrite(token, fileName);
+        AccessTicket ticket = grant.getTicket();
+        Map<String, String> handles = onEachNode(grant, ticket.getNodeNames(), (name, node) -> node.openWrite(ticket));
+
+        long size = 0;
+        try (InputStream in = Files.newInputStream(source)) {
+            byte[] buffer = new byte[grant.getChunkSize()];
+            int read;
+            while ((read = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+                byte[] chunk = read == buffer.length ? buffer : Arrays.copyOf(buffer, read);
+                long offset = size;
+                handles.keySet().retainAll(onEachNode(grant, handles.keySet(), (name, node) -> {
+                    node.writeChunk(handles.get(name), offset, chunk);
+                    return name;
+                }).keySet());
+                if (handles.isEmpty()) return false;
+                size += read;
+            }
+        }
+
+        List<String> landed = new ArrayList<>(onEachNode(grant, handles.keySet(), (name, node) -> {
+            node.commitWrite(handles.get(name));
+            return name;
+        }).keySet());
+        if (landed.isEmpty()) return false;
+        return coordinator.confirmWrite(token, ticket, landed, size);
+    }
+
+    private long readTo(AccessGrant grant, OutputStream out) throws RemoteException {
+        AccessTicket ticket = grant.getTicket();
+        List<DirectFileService> nodes = grant.getNodes();
+        int current = 0;
+        long offset = 0;
+        while (offset < grant.getSize()) {
+            try {
+                byte[] chunk = nodes.get(current).readRange(ticket, offset, grant.getChunkSize());
+                if (chunk.length == 0) throw new RemoteException("Replica is shorter than expected.");
+                out.write(chunk);
+                offset += chunk.length;
+            } catch (RemoteException e) {
+                if (++current >= nodes.size()) throw new RemoteException(" File not found in any healthy node.", e);
+                System.err.println(" Switching replica: " + e.getMessage());
+            } catch (IOException e) {
+                throw new RemoteException(" Failed to write local output.", e);
+            }
+        }
+        return offset;
+    }
+
+    // Runs the call on every named node in parallel; returns results keyed by the nodes that succeeded.
+    private static <T> Map<String, T> onEachNode(AccessGrant grant, Collection<String> nodeNames, NodeCall<T> call) {
+        Map<String, Future<T>> calls = new LinkedHashMap<>();
+        List<String> names = grant.getTicket().getNodeNames();
+        for (String nodeName : new ArrayList<>(nodeNames)) {
+            DirectFileService node = grant.getNodes().get(names.indexOf(nodeName));
+            calls.put(nodeName, POOL.submit(() -> call.apply(nodeName, node)));
+        }
+
+        Map<String, T> succeeded = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<T>> entry : calls.entrySet()) {
+            try {
+                succeeded.put(entry.getKey(), entry.getValue().get());
+            } catch (ExecutionException e) {
+                System.err.println(" Node " + entry.getKey() + " failed: " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return succeeded;
+    }
+}
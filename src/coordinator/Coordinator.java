@@ -1,33 +1,109 @@
 package coordinator;
+import auth.TicketSigner;
 import auth.User;
 import auth.UserManager;
+import cache.ContentCache;
+import rmi.AccessGrant;
+import rmi.AccessTicket;
 import rmi.CoordinatorService;
+import rmi.DirectFileService;
+import rmi.FileInfo;
+import rmi.FileResult;
 import rmi.FileService;
+import rmi.NodeStats;
+import rmi.PatchOp;
+import rmi.TransferInfo;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.server.UnicastRemoteObject;
 import java.rmi.Naming;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Coordinator extends UnicastRemoteObject implements CoordinatorService {
+    private static final long serialVersionUID = 1L;
+
+    private static final long SUSPECT_AFTER_MS = Long.getLong("coordinator.suspectAfterMs", 6000);
+    private static final long DEAD_AFTER_MS = Long.getLong("coordinator.deadAfterMs", 15000);
+    private static final int REPLICATION_FACTOR = Integer.getInteger("coordinator.replicationFactor", 3);
+    private static final int WRITE_QUORUM = Integer.getInteger("coordinator.writeQuorum", 2);
+    private static final long WRITE_TIMEOUT_MS = Long.getLong("coordinator.writeTimeoutMs", 30000);
+    private static final long READ_TIMEOUT_MS = Long.getLong("coordinator.readTimeoutMs", 30000);
+    // Upper bound on any single call to a node. Cancelling a future does not interrupt an RMI call blocked on
+    // its socket, so without this a hung replica keeps a readPool or replicaPool thread until the TCP
+    // connection dies.
+    private static final long RESPONSE_TIMEOUT_MS = Long.getLong("coordinator.responseTimeoutMs",
+            2 * Math.max(WRITE_TIMEOUT_MS, READ_TIMEOUT_MS));
+    private static final int VIRTUAL_NODES = Integer.getInteger("coordinator.virtualNodes", 128);
+    private static final double HEDGE_RATIO = Double.parseDouble(System.getProperty("coordinator.hedgeRatio", "0.1"));
+    private static final long CACHE_BYTES = Long.getLong("coordinator.cacheBytes", 64L * 1024 * 1024);
+    private static final long MIGRATION_BYTES_PER_SEC = Long.getLong("coordinator.migrationBytesPerSec", 10L * 1024 * 1024);
+    private static final int CHUNK_SIZE = Integer.getInteger("coordinator.chunkSize", 1024 * 1024);
+    private static final long TRANSFER_IDLE_MS = Long.getLong("coordinator.transferIdleMs", 5 * 60 * 1000);
+    private static final int INVENTORY_PAGE_SIZE = 1000;
+    private static final long TICKET_TTL_MS = Long.getLong("coordinator.ticketTtlMs", 60 * 1000);
+    private static final int SEARCH_LIMIT = Integer.getInteger("coordinator.searchLimit", 1000);
+    private static final int LOCK_STRIPES = Integer.getInteger("coordinator.lockStripes", 1024);
+    private static final long REPAIR_INTERVAL_MS = Long.getLong("coordinator.repairIntervalMs", 15 * 60 * 1000L);
+    private static final long TOMBSTONE_GRACE_MS = Long.getLong("coordinator.tombstoneGraceMs", 7 * 24 * 60 * 60 * 1000L);
 
     private final Map<String, FileService> registeredNodes = new ConcurrentHashMap<>();
-    private final Map<String, Boolean> nodeHealthStatus = new ConcurrentHashMap<>();
+    // The ticket-checking face of each node, the only one handed to clients.
+    private final Map<String, DirectFileService> directNodes = new ConcurrentHashMap<>();
+    private final FailureDetector failureDetector = new FailureDetector(SUSPECT_AFTER_MS, DEAD_AFTER_MS, this::onNodeStatusChange);
     private final UserManager userManager = new UserManager();
-    private final Map<String, Integer> nodeRequestCount = new HashMap<>();
+    private final ReplicaSelector replicaSelector = new ReplicaSelector();
+    private final FileLocks fileLocks = new FileLocks(LOCK_STRIPES);
+    private final FileCatalog catalog = new FileCatalog();
+    private final ExecutorService replicaPool = Executors.newFixedThreadPool(32, daemonThreads("replica-writer"));
+    private final QuorumWriter quorumWriter = new QuorumWriter(replicaPool, WRITE_TIMEOUT_MS);
+    private final Map<String, Replication> pendingReplication = new ConcurrentHashMap<>();
+    private final ExecutorService writeOffPool = Executors.newSingleThreadExecutor(daemonThreads("replica-write-off"));
+    private final ExecutorService readPool = Executors.newFixedThreadPool(64, daemonThreads("replica-reader"));
+    private final HedgedReader hedgedReader = new HedgedReader(registeredNodes, replicaSelector, readPool, HEDGE_RATIO, 10);
+    private final ContentCache<String> contentCache = new ContentCache<>(CACHE_BYTES, 10000);
+    private final HashRing ring = new HashRing(VIRTUAL_NODES);
+    private final Rebalancer rebalancer = new Rebalancer(catalog, ring, fileLocks, registeredNodes,
+            failureDetector::isAlive, REPLICATION_FACTOR, MIGRATION_BYTES_PER_SEC, CHUNK_SIZE, REPAIR_INTERVAL_MS);
+    private final Transfers transfers = new Transfers(TRANSFER_IDLE_MS);
+    private final TicketSigner tickets = TicketSigner.fromSystemProperties();
+    // Newest confirmed direct write per file; kept only until its ticket expires, as older ones have by then.
+    private final Map<String, AccessTicket> confirmedGrants = new ConcurrentHashMap<>();
+    private final AtomicBoolean quorumDegraded = new AtomicBoolean();
 
     public Coordinator() throws RemoteException {
         super();
+        if (WRITE_QUORUM < 1 || WRITE_QUORUM > REPLICATION_FACTOR) {
+            throw new IllegalArgumentException("coordinator.writeQuorum (" + WRITE_QUORUM
+                    + ") must be between 1 and coordinator.replicationFactor (" + REPLICATION_FACTOR + ").");
+        }
         startNodeHealthMonitor();
+        rebalancer.start();
     }
 
     private void startNodeHealthMonitor() {
         Thread healthMonitor = new Thread(() -> {
+            int ticks = 0;
             while (true) {
                 try {
-                    checkAllNodesHealth();
-                    Thread.sleep(10000);
+                    failureDetector.sweep();
+                    if (++ticks % 60 == 0) {
+                        refreshAllInventories();
+                    }
+                    if (ticks % 10 == 0) {
+                        expireTransfers();
+                        expireConfirmedGrants();
+                    }
+                    Thread.sleep(1000);
                 } catch (InterruptedException e) {
                     break;
                 }
@@ -38,62 +114,121 @@ public class Coordinator extends UnicastRemoteObject implements CoordinatorServi
         System.out.println("[Coordinator] Node health monitor started.");
     }
 
-    private void checkAllNodesHealth() {
-        for (String nodeName : new HashSet<>(registeredNodes.keySet())) {
-            try {
+    private void onNodeStatusChange(String nodeName, FailureDetector.Status status) {
+        switch (status) {
+            case DEAD:
+                System.out.println("[Health Monitor] Node " + nodeName + " went offline.");
+                if (ring.remove(nodeName)) rebalancer.requestRebalance();
+                break;
+            case SUSPECT:
+                System.out.println("[Health Monitor] Node " + nodeName + " missed heartbeats, suspected.");
+                break;
+            case ALIVE:
+                System.out.println("[Health Monitor] Node " + nodeName + " is back online.");
                 FileService node = registeredNodes.get(nodeName);
                 if (node != null) {
-                    node.getNodeName();
-                    nodeHealthStatus.put(nodeName, true);
-                }
-            } catch (Exception e) {
-                if (nodeHealthStatus.getOrDefault(nodeName, true)) {
-                    System.out.println("[Health Monitor] Node " + nodeName + " went offline.");
+                    Thread refresher = new Thread(() -> refreshInventory(nodeName, node));
+                    refresher.setDaemon(true);
+                    refresher.start();
                 }
-                nodeHealthStatus.put(nodeName, false);
-            }
+                if (ring.add(nodeName)) rebalancer.requestRebalance();
+                break;
         }
     }
 
-    public List<FileService> getHealthyNodes() {
-        List<FileService> healthyNodes = new ArrayList<>();
+    private void refreshAllInventories() {
         for (Map.Entry<String, FileService> entry : registeredNodes.entrySet()) {
-            String nodeName = entry.getKey();
-            FileService node = entry.getValue();
-            if (isNodeHealthy(nodeName, node)) {
-                healthyNodes.add(node);
+            if (failureDetector.isAlive(entry.getKey())) {
+                refreshInventory(entry.getKey(), entry.getValue());
             }
         }
-        return healthyNodes;
+        int purged = catalog.purgeTombstones(System.currentTimeMillis(), TOMBSTONE_GRACE_MS);
+        if (purged > 0) {
+            System.out.println("[Catalog] Purged " + purged + " tombstone(s).");
+        }
+        rebalancer.requestRebalance();
     }
 
-    private boolean isNodeHealthy(String nodeName, FileService node) {
+    private void refreshInventory(String nodeName, FileService node) {
         try {
-            node.getNodeName();
-            nodeHealthStatus.put(nodeName, true);
-            return true;
+            List<String> deleted = catalog.reconcile(nodeName, listInventory(node), rebalancer::repair);
+            for (String fileName : deleted) {
+                FileLocks.Handle lock = fileLocks.write(fileName);
+                try {
+                    if (catalog.get(fileName) == null) {
+                        node.deleteFile(fileName);
+                        catalog.removeReplica(fileName, nodeName);
+                        System.out.println("[Catalog] Removed deleted file " + fileName + " from node: " + nodeName);
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
         } catch (Exception e) {
-            if (nodeHealthStatus.getOrDefault(nodeName, true)) {
-                System.out.println("[Node Check] Node " + nodeName + " is currently offline.");
+            System.err.println("[Catalog] Failed to refresh inventory of node " + nodeName + ": " + e.getMessage());
+        }
+    }
+
+    // Pulled in pages so a large node never has to serialize its whole listing in one reply.
+    private List<FileInfo> listInventory(FileService node) throws RemoteException {
+        List<FileInfo> inventory = new ArrayList<>();
+        String after = null;
+        while (true) {
+            List<FileInfo> page = node.listFilesPage(after, INVENTORY_PAGE_SIZE);
+            inventory.addAll(page);
+            if (page.size() < INVENTORY_PAGE_SIZE) return inventory;
+            after = page.get(page.size() - 1).getName();
+        }
+    }
+
+    private List<String> healthyReplicas(FileCatalog.Entry entry) {
+        List<String> replicas = new ArrayList<>();
+        for (String nodeName : entry.getReplicas()) {
+            if (registeredNodes.containsKey(nodeName) && failureDetector.isAlive(nodeName)) {
+                replicas.add(nodeName);
             }
-            nodeHealthStatus.put(nodeName, false);
-            return false;
         }
+        return replicas;
+    }
+
+    private List<String> healthyNodeNames() {
+        List<String> names = new ArrayList<>();
+        for (String nodeName : registeredNodes.keySet()) {
+            if (failureDetector.isAlive(nodeName)) {
+                names.add(nodeName);
+            }
+        }
+        return names;
+    }
+
+    public List<DirectFileService> getHealthyNodes() {
+        List<DirectFileService> healthyNodes = new ArrayList<>();
+        for (String nodeName : healthyNodeNames()) {
+            healthyNodes.add(directNodes.get(nodeName));
+        }
+        return healthyNodes;
     }
 
     @Override
-    public synchronized void registerNode(String nodeName, FileService nodeService) throws RemoteException {
+    public void registerNode(String nodeName, FileService nodeService, DirectFileService directService) throws RemoteException {
+        directNodes.put(nodeName, directService);
         registeredNodes.put(nodeName, nodeService);
-        nodeHealthStatus.put(nodeName, true);
+        failureDetector.register(nodeName);
         System.out.println("[Coordinator] Registered node: " + nodeName);
+        refreshInventory(nodeName, nodeService);
+        ring.add(nodeName);
+        rebalancer.requestRebalance();
     }
 
     @Override
-    public synchronized boolean registerUser(User user) throws RemoteException {
+    public boolean heartbeat(String nodeName, NodeStats stats) throws RemoteException {
+        return registeredNodes.containsKey(nodeName) && failureDetector.heartbeat(nodeName, stats);
+    }
+
+    @Override
+    public boolean registerUser(User user) throws RemoteException {
         boolean result = userManager.registerUser(user);
         if (result) {
-            userManager.saveUsers();
-            userManager.loadUsers();
             System.out.println("[Coordinator] Registered user: " + user.getUsername());
         } else {
             System.out.println("[Coordinator] Failed to register user.");
@@ -102,7 +237,7 @@ public class Coordinator extends UnicastRemoteObject implements CoordinatorServi
     }
 
     @Override
-    public synchronized String login(String username, String password) throws RemoteException {
+    public String login(String username, String password) throws RemoteException {
         User user = userManager.login(username, password);
         if (user != null) {
             return user.getToken();
@@ -111,12 +246,12 @@ public class Coordinator extends UnicastRemoteObject implements CoordinatorServi
     }
 
     @Override
-    public synchronized User getUserByToken(String token) throws RemoteException {
+    public User getUserByToken(String token) throws RemoteException {
         return userManager.getUserByToken(token);
     }
 
     @Override
-    public synchronized byte[] readFile(String token, String filename) throws RemoteException {
+    public byte[] readFile(String token, String filename) throws RemoteException {
         User user = userManager.getUserByToken(token);
         if (user == null) throw new RemoteException(" Invalid token.");
         if (!user.getPermissions().contains("read")) throw new RemoteException("❌ Access denied: read.");
@@ -125,170 +260,937 @@ public class Coordinator extends UnicastRemoteObject implements CoordinatorServi
         if (parts.length != 2 || !user.getDepartment().equals(parts[0]))
             throw new RemoteException(" Access denied: department mismatch.");
 
-        List<FileService> healthyNodes = getHealthyNodes();
-        if (healthyNodes.isEmpty()) {
-            throw new RemoteException(" No healthy nodes available.");
-        }
+        FileLocks.Handle lock = fileLocks.read(filename);
+        try {
+            FileCatalog.Entry entry = catalog.get(filename);
+            if (entry == null) {
+                throw new RemoteException(" File not found in any healthy node.");
+            }
 
-        for (FileService node : healthyNodes) {
-            try {
-                if (node.fileExists(filename)) {
-                    System.out.println(" Reading from healthy node: " + node.getNodeName());
-                    return node.readFile(filename);
-                }
-            } catch (Exception e) {
-                continue;
+            List<String> replicas = healthyReplicas(entry);
+            if (replicas.isEmpty()) {
+                throw new RemoteException(" No healthy nodes available.");
             }
+
+            byte[] data = readFromReplicas(entry, replicas, " Reading from healthy node: ");
+            if (data != null) return data;
+        } finally {
+            lock.release();
         }
 
         throw new RemoteException(" File not found in any healthy node.");
     }
 
+    // Caller must hold the file's read lock. Returns null when every replica failed.
+    private byte[] readFromReplicas(FileCatalog.Entry entry, List<String> replicas, String logPrefix) throws RemoteException {
+        byte[] cached = contentCache.get(entry.getFileName(), entry.getVersion());
+        if (cached != null) {
+            System.out.println(" Served from coordinator cache: " + entry.getFileName());
+            return cached;
+        }
+
+        try {
+            HedgedReader.Result result = hedgedReader.read(entry.getFileName(), replicaSelector.order(replicas));
+            if (result == null) return null;
+            System.out.println(logPrefix + result.getNodeName());
+            contentCache.put(entry.getFileName(), entry.getVersion(), result.getData());
+            return result.getData();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException(" Read interrupted.");
+        }
+    }
+
     @Override
-    public synchronized boolean writeFile(String token, String fileName, byte[] data) throws RemoteException {
+    public boolean writeFile(String token, String fileName, byte[] data) throws RemoteException {
         User user = userManager.getUserByToken(token);
         if (user == null || !user.getPermissions().contains("write")) return false;
 
         String[] parts = fileName.split("/", 2);
         if (parts.length != 2 || !user.getDepartment().equalsIgnoreCase(parts[0])) return false;
 
-        List<FileService> healthyNodes = getHealthyNodes();
-        if (healthyNodes.isEmpty()) {
-            System.err.println(" No healthy nodes available for writing.");
-            return false;
+        FileLocks.Handle lock = fileLocks.write(fileName);
+        try {
+            awaitPendingReplication(fileName);
+            List<String> targets = placementFor(fileName, catalog.get(fileName));
+            return replicate(fileName, data, targets, " Written to healthy node: ");
+        } finally {
+            lock.release();
         }
+    }
 
-        Collections.shuffle(healthyNodes);
+    @Override
+    public boolean deleteFile(String token, String filename) throws RemoteException {
+        User user = userManager.getUserByToken(token);
+        if (user == null || !user.getPermissions().contains("delete")) return false;
 
-        for (FileService node : healthyNodes) {
-            try {
-                node.writeFile(fileName, data);
-                System.out.println(" Written to healthy node: " + node.getNodeName());
-                return true;
-            } catch (Exception e) {
-                continue;
-            }
-        }
+        String[] parts = filename.split("/", 2);
+        if (parts.length != 2 || !user.getDepartment().equalsIgnoreCase(parts[0])) return false;
+
+        FileLocks.Handle lock = fileLocks.write(filename);
+        try {
+            awaitPendingReplication(filename);
+            FileCatalog.Entry entry = catalog.get(filename);
+            if (entry == null) return false;
 
-        System.err.println(" Failed to write to any healthy node.");
-        return false;
+            contentCache.invalidate(filename);
+            List<String> replicas = healthyReplicas(entry);
+            QuorumWriter.Result result = quorumWriter.write(replicas, replicas.size(), nodeName -> {
+                registeredNodes.get(nodeName).deleteFile(filename);
+                System.out.println("️ Deleted from healthy node: " + nodeName);
+            });
+            if (result.getAcked().isEmpty()) return false;
+
+            catalog.recordDelete(filename, result.getAcked(), System.currentTimeMillis());
+            return true;
+        } finally {
+            lock.release();
+        }
     }
 
     @Override
-    public synchronized boolean deleteFile(String token, String filename) throws RemoteException {
+    public boolean editFile(String token, String filename, byte[] newData) throws RemoteException {
         User user = userManager.getUserByToken(token);
-        if (user == null || !user.getPermissions().contains("delete")) return false;
+        if (user == null || !user.getPermissions().contains("edit")) return false;
 
         String[] parts = filename.split("/", 2);
         if (parts.length != 2 || !user.getDepartment().equalsIgnoreCase(parts[0])) return false;
 
-        List<FileService> healthyNodes = getHealthyNodes();
-        boolean deleted = false;
+        FileLocks.Handle lock = fileLocks.write(filename);
+        try {
+            awaitPendingReplication(filename);
+            FileCatalog.Entry entry = catalog.get(filename);
+            if (entry == null) return false;
 
-        for (FileService node : healthyNodes) {
-            try {
-                if (node.fileExists(filename)) {
-                    node.deleteFile(filename);
-                    System.out.println("️ Deleted from healthy node: " + node.getNodeName());
-                    deleted = true;
+            return replicate(filename, newData, placementFor(filename, entry), " Edited file in healthy node: ");
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public boolean applyPatch(String token, String fileName, long baseVersion, List<PatchOp> ops) throws RemoteException {
+        User user = userManager.getUserByToken(token);
+        if (user == null || !user.getPermissions().contains("edit")) return false;
+
+        String[] parts = fileName.split("/", 2);
+        if (parts.length != 2 || !user.getDepartment().equalsIgnoreCase(parts[0])) return false;
+
+        FileLocks.Handle lock = fileLocks.write(fileName);
+        try {
+            awaitPendingReplication(fileName);
+            FileCatalog.Entry entry = catalog.get(fileName);
+            if (entry == null) throw new RemoteException("FILE_NOT_FOUND");
+            if (entry.getVersion() != baseVersion) throw new RemoteException("STALE_VERSION");
+
+            // Only replicas holding the base version can take the patch; the rebalancer refills the rest.
+            List<String> replicas = healthyReplicas(entry);
+            int quorum = writeQuorum();
+            if (replicas.size() < quorum) {
+                System.err.println(" Not enough healthy replicas for patch quorum (" + replicas.size() + "/" + quorum + ").");
+                return false;
+            }
+
+            contentCache.invalidate(fileName);
+            Map<String, Long> sizes = new ConcurrentHashMap<>();
+            QuorumWriter.Result result = quorumWriter.write(replicas, quorum, nodeName -> {
+                FileService node = registeredNodes.get(nodeName);
+                FileInfo base = node.statFile(fileName);
+                if (base == null || !FileCatalog.isCurrentCopy(entry, base)) {
+                    throw new RemoteException("Replica " + nodeName + " does not hold version " + entry.getVersion() + " of " + fileName);
                 }
-            } catch (Exception e) {
-                continue;
+                sizes.put(nodeName, node.applyPatch(fileName, base.getSize(), base.getLastModified(), ops));
+                System.out.println(" Patched file (" + ops.size() + " op(s)) on healthy node: " + nodeName);
+            });
+            if (result.getAcked().isEmpty()) {
+                System.err.println(" Failed to patch " + fileName + " on any healthy node.");
+                return false;
             }
+            return recordReplicatedWrite(fileName, sizes.get(result.getAcked().get(0)), result);
+        } finally {
+            lock.release();
         }
+    }
+
+    @Override
+    public long getFileVersion(String token, String fileName) throws RemoteException {
+        User user = userManager.getUserByToken(token);
+        if (user == null) throw new RemoteException(" Invalid token.");
 
-        return deleted;
+        String[] parts = fileName.split("/", 2);
+        if (parts.length != 2 || !user.getDepartment().equalsIgnoreCase(parts[0]))
+            throw new RemoteException(" Access denied: department mismatch.");
+
+        FileCatalog.Entry entry = catalog.get(fileName);
+        if (entry == null) throw new RemoteException("FILE_NOT_FOUND");
+        return entry.getVersion();
     }
 
     @Override
-    public synchronized boolean editFile(String token, String filename, byte[] newData) throws RemoteException {
+    public List<FileResult> readFiles(String token, List<String> fileNames) throws RemoteException {
         User user = userManager.getUserByToken(token);
-        if (user == null || !user.getPermissions().contains("edit")) return false;
+        if (user == null) throw new RemoteException(" Invalid token.");
+        if (!user.getPermissions().contains("read")) throw new RemoteException("❌ Access denied: read.");
 
-        String[] parts = filename.split("/", 2);
-        if (parts.length != 2 || !user.getDepartment().equalsIgnoreCase(parts[0])) return false;
+        Map<String, FileResult> results = new HashMap<>();
+        List<String> allowed = filterDepartment(user, fileNames, results);
 
-        List<FileService> healthyNodes = getHealthyNodes();
-        boolean edited = false;
+        FileLocks.Handle lock = fileLocks.readAll(allowed);
+        try {
+            Map<String, FileCatalog.Entry> entries = new HashMap<>();
+            Map<String, List<String>> byNode = new HashMap<>();
+            for (String fileName : allowed) {
+                FileCatalog.Entry entry = catalog.get(fileName);
+                if (entry == null) {
+                    results.put(fileName, FileResult.failed(fileName, "File not found in any healthy node."));
+                    continue;
+                }
+                entries.put(fileName, entry);
 
-        for (FileService node : healthyNodes) {
-            try {
-                if (node.fileExists(filename)) {
-                    node.writeFile(filename, newData);
-                    System.out.println(" Edited file in healthy node: " + node.getNodeName());
-                    edited = true;
+                byte[] cached = contentCache.get(fileName, entry.getVersion());
+                if (cached != null) {
+                    results.put(fileName, FileResult.ok(fileName, cached));
+                    continue;
+                }
+                String nodeName = replicaSelector.pick(healthyReplicas(entry));
+                if (nodeName == null) {
+                    results.put(fileName, FileResult.failed(fileName, "No healthy nodes available."));
+                    continue;
                 }
-            } catch (Exception e) {
-                continue;
+                byNode.computeIfAbsent(nodeName, n -> new ArrayList<>()).add(fileName);
+            }
 
+            Map<String, Future<List<FileResult>>> calls = new HashMap<>();
+            for (Map.Entry<String, List<String>> group : byNode.entrySet()) {
+                String nodeName = group.getKey();
+                calls.put(nodeName, readPool.submit(() -> {
+                    long started = replicaSelector.begin(nodeName);
+                    try {
+                        List<FileResult> nodeResults = registeredNodes.get(nodeName).readFiles(group.getValue());
+                        replicaSelector.end(nodeName, started, true);
+                        return nodeResults;
+                    } catch (Exception e) {
+                        replicaSelector.end(nodeName, started, false);
+                        throw e;
+                    }
+                }));
             }
+
+            // One deadline for all node calls: the stripes stay held until the last of them is given up on.
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(READ_TIMEOUT_MS);
+            for (Map.Entry<String, Future<List<FileResult>>> call : calls.entrySet()) {
+                try {
+                    long remaining = Math.max(0, deadline - System.nanoTime());
+                    for (FileResult result : call.getValue().get(remaining, TimeUnit.NANOSECONDS)) {
+                        if (!result.isSuccess()) continue;
+                        results.put(result.getFileName(), result);
+                        contentCache.put(result.getFileName(), entries.get(result.getFileName()).getVersion(), result.getData());
+                    }
+                    System.out.println(" Batch read " + byNode.get(call.getKey()).size() + " file(s) from healthy node: " + call.getKey());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RemoteException(" Read interrupted.");
+                } catch (ExecutionException e) {
+                    System.err.println(" Batch read from node " + call.getKey() + " failed: " + e.getCause().getMessage());
+                } catch (TimeoutException e) {
+                    call.getValue().cancel(true);
+                    System.err.println(" Batch read from node " + call.getKey() + " timed out.");
+                }
+            }
+
+            // Whatever the chosen node could not serve falls back to the single-file path with failover.
+            for (List<String> group : byNode.values()) {
+                for (String fileName : group) {
+                    if (results.containsKey(fileName)) continue;
+                    FileCatalog.Entry entry = entries.get(fileName);
+                    byte[] data = readFromReplicas(entry, healthyReplicas(entry), " Reading from healthy node: ");
+                    results.put(fileName, data != null ? FileResult.ok(fileName, data)
+                            : FileResult.failed(fileName, "File not found in any healthy node."));
+                }
+            }
+        } finally {
+            lock.release();
         }
 
-        return edited;
+        return inRequestOrder(fileNames, results);
     }
+
     @Override
-    public synchronized byte[] requestFile(String token, String filename) throws RemoteException {
+    public List<FileResult> writeFiles(String token, Map<String, byte[]> files) throws RemoteException {
         User user = userManager.getUserByToken(token);
-        if (user == null) throw new RemoteException("Invalid token.");
+        Map<String, FileResult> results = new HashMap<>();
+        if (user == null || !user.getPermissions().contains("write")) {
+            for (String fileName : files.keySet()) {
+                results.put(fileName, FileResult.failed(fileName, "Access denied: write."));
+            }
+            return inRequestOrder(new ArrayList<>(files.keySet()), results);
+        }
 
-        String username = user.getUsername();
-        String userSection = user.getDepartment();
-        boolean hasReadPermission = user.getPermissions().contains("read");
+        List<String> allowed = filterDepartment(user, files.keySet(), results);
 
-        System.out.println("[Coordinator] " + username + " from [" + userSection + "] requested file: " + filename);
+        FileLocks.Handle lock = fileLocks.writeAll(allowed);
+        try {
+            Map<String, List<String>> targets = new HashMap<>();
+            int quorum = writeQuorum();
+            awaitPendingReplication(allowed);
+            for (String fileName : allowed) {
+                List<String> placement = placementFor(fileName, catalog.get(fileName));
+                if (placement.size() < quorum) {
+                    results.put(fileName, FileResult.failed(fileName, "Not enough healthy nodes for write quorum."));
+                    continue;
+                }
+                contentCache.invalidate(fileName);
+                targets.put(fileName, placement);
+            }
+
+            QuorumWriter.BatchResult written = quorumWriter.writeBatch(targets, quorum, (nodeName, items) -> {
+                Map<String, byte[]> payload = new HashMap<>();
+                for (String item : items) payload.put(item, files.get(item));
+                List<String> ok = new ArrayList<>();
+                for (FileResult result : registeredNodes.get(nodeName).writeFiles(payload)) {
+                    if (result.isSuccess()) ok.add(result.getFileName());
+                }
+                System.out.println(" Batch wrote " + ok.size() + "/" + items.size() + " file(s) to healthy node: " + nodeName);
+                return ok;
+            });
+
+            Map<String, Long> versions = new HashMap<>();
+            long now = System.currentTimeMillis();
+            for (String fileName : targets.keySet()) {
+                List<String> acked = written.getAcked(fileName);
+                if (acked.isEmpty()) {
+                    results.put(fileName, FileResult.failed(fileName, "Failed to write to any healthy node."));
+                    continue;
+                }
+                versions.put(fileName, catalog.recordWrite(fileName, acked, files.get(fileName).length, now));
+                results.put(fileName, written.isQuorumReached(fileName) ? FileResult.ok(fileName)
+                        : FileResult.failed(fileName, "Write quorum not reached."));
+            }
+
+            AtomicBoolean abandoned = new AtomicBoolean();
+            CompletableFuture<?> tail = written.getLateAcks().thenAccept(late -> {
+                for (Map.Entry<String, List<String>> item : late.entrySet()) {
+                    Long version = versions.get(item.getKey());
+                    if (version == null) continue;
+                    if (abandoned.get()) {
+                        writeOff(item.getKey(), item.getValue());
+                        continue;
+                    }
+                    for (String nodeName : item.getValue()) {
+                        catalog.addReplica(item.getKey(), nodeName, version, System.currentTimeMillis());
+                    }
+                }
+            });
+            Replication replication = new Replication(tail, abandoned);
+            for (String fileName : versions.keySet()) {
+                trackReplication(fileName, replication);
+            }
+        } finally {
+            lock.release();
+        }
+
+        return inRequestOrder(new ArrayList<>(files.keySet()), results);
+    }
+
+    @Override
+    public List<FileResult> deleteFiles(String token, List<String> fileNames) throws RemoteException {
+        User user = userManager.getUserByToken(token);
+        Map<String, FileResult> results = new HashMap<>();
+        if (user == null || !user.getPermissions().contains("delete")) {
+            for (String fileName : fileNames) {
+                results.put(fileName, FileResult.failed(fileName, "Access denied: delete."));
+            }
+            return inRequestOrder(fileNames, results);
+        }
+
+        List<String> allowed = filterDepartment(user, fileNames, results);
+
+        FileLocks.Handle lock = fileLocks.writeAll(allowed);
+        try {
+            Map<String, List<String>> targets = new HashMap<>();
+            awaitPendingReplication(allowed);
+            for (String fileName : allowed) {
+                FileCatalog.Entry entry = catalog.get(fileName);
+                if (entry == null) {
+                    results.put(fileName, FileResult.failed(fileName, "File not found."));
+                    continue;
+                }
+                contentCache.invalidate(fileName);
+                targets.put(fileName, healthyReplicas(entry));
+            }
+
+            QuorumWriter.BatchResult deleted = quorumWriter.writeBatch(targets, Integer.MAX_VALUE, (nodeName, items) -> {
+                List<String> ok = new ArrayList<>();
+                for (FileResult result : registeredNodes.get(nodeName).deleteFiles(items)) {
+                    if (result.isSuccess()) ok.add(result.getFileName());
+                }
+                System.out.println("️ Batch deleted " + ok.size() + "/" + items.size() + " file(s) from healthy node: " + nodeName);
+                return ok;
+            });
+
+            long now = System.currentTimeMillis();
+            for (String fileName : targets.keySet()) {
+                if (deleted.getAcked(fileName).isEmpty()) {
+                    results.put(fileName, FileResult.failed(fileName, "Failed to delete from any healthy node."));
+                } else {
+                    catalog.recordDelete(fileName, deleted.getAcked(fileName), now);
+                    results.put(fileName, FileResult.ok(fileName));
+                }
+            }
+        } finally {
+            lock.release();
+        }
+
+        return inRequestOrder(fileNames, results);
+    }
+
+    private List<String> filterDepartment(User user, Collection<String> fileNames, Map<String, FileResult> results) {
+        List<String> allowed = new ArrayList<>();
+        for (String fileName : new LinkedHashSet<>(fileNames)) {
+            String[] parts = fileName.split("/", 2);
+            if (parts.length != 2 || !user.getDepartment().equalsIgnoreCase(parts[0])) {
+                results.put(fileName, FileResult.failed(fileName, "Access denied: department mismatch."));
+            } else {
+                allowed.add(fileName);
+            }
+        }
+        return allowed;
+    }
+
+    @Override
+    public TransferInfo openRead(String token, String fileName) throws RemoteException {
+        User user = userManager.getUserByToken(token);
+        if (user == null) throw new RemoteException(" Invalid token.");
+        if (!user.getPermissions().contains("read")) throw new RemoteException("❌ Access denied: read.");
+
+        String[] parts = fileName.split("/", 2);
+        if (parts.length != 2 || !user.getDepartment().equals(parts[0]))
+            throw new RemoteException(" Access denied: department mismatch.");
+
+        FileLocks.Handle lock = fileLocks.read(fileName);
+        try {
+            FileCatalog.Entry entry = catalog.get(fileName);
+            if (entry == null) throw new RemoteException(" File not found in any healthy node.");
+
+            Transfers.Transfer transfer = transfers.openRead(token, fileName, entry.getVersion());
+            return new TransferInfo(transfer.getHandle(), fileName, entry.getSize(), entry.getVersion(), CHUNK_SIZE);
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public byte[] readChunk(String token, String handle, long offset, int length) throws RemoteException {
+        Transfers.Transfer transfer = requireTransfer(token, handle, false);
+        String fileName = transfer.getFileName();
+        int chunk = Math.min(length, CHUNK_SIZE);
+
+        FileLocks.Handle lock = fileLocks.read(fileName);
+        try {
+            FileCatalog.Entry entry = catalog.get(fileName);
+            if (entry == null || entry.getVersion() != transfer.getVersion()) {
+                transfers.remove(token, handle);
+                throw new RemoteException(" File changed during transfer.");
+            }
+
+            List<String> replicas = healthyReplicas(entry);
+            if (replicas.isEmpty()) throw new RemoteException(" No healthy nodes available.");
+
+            HedgedReader.Result result = hedgedReader.read(replicaSelector.order(replicas),
+                    node -> node.readRange(fileName, offset, chunk));
+            if (result == null) throw new RemoteException(" File not found in any healthy node.");
+            return result.getData();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException(" Read interrupted.");
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public TransferInfo openWrite(String token, String fileName) throws RemoteException {
+        User user = userManager.getUserByToken(token);
+        if (user == null || !user.getPermissions().contains("write")) throw new RemoteException(" Access denied: write.");
 
-        List<FileService> healthyNodes = getHealthyNodes();
-        if (healthyNodes.isEmpty()) {
-            throw new RemoteException(" No healthy nodes available.");
+        String[] parts = fileName.split("/", 2);
+        if (parts.length != 2 || !user.getDepartment().equalsIgnoreCase(parts[0]))
+            throw new RemoteException(" Access denied: department mismatch.");
+
+        List<String> targets = placementFor(fileName, catalog.get(fileName));
+        int quorum = writeQuorum();
+        if (targets.size() < quorum) {
+            throw new RemoteException(" Not enough healthy nodes for write quorum (" + targets.size() + "/" + quorum + ").");
+        }
+
+        Map<String, String> nodeHandles = new ConcurrentHashMap<>();
+        QuorumWriter.Result opened = quorumWriter.write(targets, targets.size(),
+                nodeName -> nodeHandles.put(nodeName, registeredNodes.get(nodeName).openWrite(fileName)));
+        if (opened.getAcked().size() < quorum) {
+            abortOnNodes(fileName, nodeHandles);
+            throw new RemoteException(" Not enough healthy nodes accepted the upload.");
+        }
+        nodeHandles.keySet().retainAll(opened.getAcked());
+
+        Transfers.Transfer transfer = transfers.openWrite(token, fileName, nodeHandles);
+        return new TransferInfo(transfer.getHandle(), fileName, 0, -1, CHUNK_SIZE);
+    }
+
+    @Override
+    public void writeChunk(String token, String handle, long offset, byte[] data) throws RemoteException {
+        Transfers.Transfer transfer = requireTransfer(token, handle, true);
+        if (data.length > CHUNK_SIZE) throw new RemoteException(" Chunk larger than " + CHUNK_SIZE + " bytes.");
+
+        Map<String, String> nodeHandles = transfer.getNodeHandles();
+        List<String> targets = new ArrayList<>(nodeHandles.keySet());
+        QuorumWriter.Result result = quorumWriter.write(targets, targets.size(),
+                nodeName -> registeredNodes.get(nodeName).writeChunk(nodeHandles.get(nodeName), offset, data));
+
+        // A node that missed a chunk can no longer commit a complete file.
+        Map<String, String> failed = new HashMap<>();
+        for (String nodeName : targets) {
+            if (result.getAcked().contains(nodeName)) continue;
+            String nodeHandle = nodeHandles.remove(nodeName);
+            if (nodeHandle != null) failed.put(nodeName, nodeHandle);
         }
+        abortOnNodes(transfer.getFileName(), failed);
+
+        if (nodeHandles.size() < writeQuorum()) {
+            closeTransfer(token, handle);
+            throw new RemoteException(" Write quorum lost during transfer of " + transfer.getFileName() + ".");
+        }
+        transfer.extendTo(offset + data.length);
+    }
+
+    @Override
+    public boolean commitWrite(String token, String handle) throws RemoteException {
+        Transfers.Transfer transfer = requireTransfer(token, handle, true);
+        if (transfers.remove(token, handle) == null) throw new RemoteException(" Unknown or expired transfer.");
+
+        String fileName = transfer.getFileName();
+        Map<String, String> nodeHandles = transfer.getNodeHandles();
+        FileLocks.Handle lock = fileLocks.write(fileName);
+        try {
+            awaitPendingReplication(fileName);
+            contentCache.invalidate(fileName);
+            QuorumWriter.Result result = quorumWriter.write(new ArrayList<>(nodeHandles.keySet()), writeQuorum(), nodeName -> {
+                registeredNodes.get(nodeName).commitWrite(nodeHandles.get(nodeName));
+                System.out.println(" Streamed " + transfer.getSize() + " bytes to healthy node: " + nodeName);
+            });
+            if (result.getAcked().isEmpty()) {
+                System.err.println(" Failed to commit " + fileName + " on any healthy node.");
+                return false;
+            }
+            return recordReplicatedWrite(fileName, transfer.getSize(), result);
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public void closeTransfer(String token, String handle) throws RemoteException {
+        Transfers.Transfer transfer = transfers.remove(token, handle);
+        if (transfer != null && transfer.isWrite()) {
+            abortOnNodes(transfer.getFileName(), transfer.getNodeHandles());
+        }
+    }
+
+    @Override
+    public AccessGrant authorizeRead(String token, String fileName) throws RemoteException {
+        User user = userManager.getUserByToken(token);
+        if (user == null) throw new RemoteException(" Invalid token.");
+        if (!user.getPermissions().contains("read")) throw new RemoteException("❌ Access denied: read.");
+
+        String[] parts = fileName.split("/", 2);
+        if (parts.length != 2 || !user.getDepartment().equals(parts[0]))
+            throw new RemoteException(" Access denied: department mismatch.");
+
+        FileLocks.Handle lock = fileLocks.read(fileName);
+        try {
+            FileCatalog.Entry entry = catalog.get(fileName);
+            if (entry == null) throw new RemoteException(" File not found in any healthy node.");
+
+            List<String> replicas = replicaSelector.order(healthyReplicas(entry));
+            if (replicas.isEmpty()) throw new RemoteException(" No healthy nodes available.");
+
+            AccessTicket ticket = tickets.issue(user.getUsername(), fileName, AccessTicket.Operation.READ, replicas, TICKET_TTL_MS);
+            return new AccessGrant(ticket, nodesFor(replicas), entry.getSize(), entry.getVersion(), CHUNK_SIZE);
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public AccessGrant authorizeWrite(String token, String fileName) throws RemoteException {
+        User user = userManager.getUserByToken(token);
+        if (user == null || !user.getPermissions().contains("write")) throw new RemoteException(" Access denied: write.");
+
+        String[] parts = fileName.split("/", 2);
+        if (parts.length != 2 || !user.getDepartment().equalsIgnoreCase(parts[0]))
+            throw new RemoteException(" Access denied: department mismatch.");
+
+        return grantWrite(user.getUsername(), fileName);
+    }
 
-        List<FileService> sortedNodes = new ArrayList<>(healthyNodes);
-        sortedNodes.sort(Comparator.comparingInt(n -> {
+    // Sync writes take their grants from the same counter as client writes, so nodes order the two correctly,
+    // and are confirmed into the catalog the same way.
+    @Override
+    public Map<String, AccessGrant> authorizeSyncWrites(AccessTicket proof, List<String> fileNames) throws RemoteException {
+        requireSyncProof(proof);
+        Map<String, AccessGrant> grants = new HashMap<>();
+        for (String fileName : fileNames) {
             try {
-                return nodeRequestCount.getOrDefault(n.getNodeName(), 0);
+                grants.put(fileName, grantWrite(AccessTicket.SYNC_USER, fileName));
             } catch (RemoteException e) {
-                return Integer.MAX_VALUE;
+                System.err.println(" No sync grant for " + fileName + ": " + e.getMessage());
             }
-        }));
+        }
+        return grants;
+    }
+
+    @Override
+    public boolean confirmSyncWrite(AccessTicket proof, AccessTicket ticket, List<String> nodeNames, long size) throws RemoteException {
+        requireSyncProof(proof);
+        if (!tickets.isAuthentic(ticket) || ticket.getOperation() != AccessTicket.Operation.WRITE
+                || !AccessTicket.SYNC_USER.equals(ticket.getUsername())) {
+            throw new RemoteException(" Access denied: invalid ticket.");
+        }
+        return recordDirectWrite(ticket, nodeNames, size);
+    }
+
+    private void requireSyncProof(AccessTicket proof) throws RemoteException {
+        if (!tickets.isAuthentic(proof) || proof.getOperation() != AccessTicket.Operation.WRITE
+                || !AccessTicket.SYNC_USER.equals(proof.getUsername()) || proof.getExpiresAt() < System.currentTimeMillis()) {
+            throw new RemoteException(" Access denied: invalid sync credentials.");
+        }
+    }
+
+    // Caller has checked who is asking.
+    private AccessGrant grantWrite(String username, String fileName) throws RemoteException {
+        List<String> targets = placementFor(fileName, catalog.get(fileName));
+        int quorum = writeQuorum();
+        if (targets.size() < quorum) {
+            throw new RemoteException(" Not enough healthy nodes for write quorum (" + targets.size() + "/" + quorum + ").");
+        }
+
+        AccessTicket ticket = tickets.issue(username, fileName, AccessTicket.Operation.WRITE, targets, TICKET_TTL_MS);
+        return new AccessGrant(ticket, nodesFor(targets), 0, -1, CHUNK_SIZE);
+    }
+
+    // The client reports where its direct write landed; only copies still holding that grant's contents are
+    // recorded. A coordinator write may have landed on a copy before or after the ticketed one, so a matching
+    // size alone does not show which of the two the copy kept.
+    @Override
+    public boolean confirmWrite(String token, AccessTicket ticket, List<String> nodeNames, long size) throws RemoteException {
+        User user = userManager.getUserByToken(token);
+        if (user == null || !tickets.isAuthentic(ticket) || ticket.getOperation() != AccessTicket.Operation.WRITE
+                || !ticket.getUsername().equals(user.getUsername())) {
+            throw new RemoteException(" Access denied: invalid ticket.");
+        }
+        return recordDirectWrite(ticket, nodeNames, size);
+    }
+
+    private boolean recordDirectWrite(AccessTicket ticket, List<String> nodeNames, long size) {
+        String fileName = ticket.getFileName();
+        FileLocks.Handle lock = fileLocks.write(fileName);
+        try {
+            awaitPendingReplication(fileName);
+            if (ticket.getExpiresAt() < System.currentTimeMillis()) {
+                System.err.println(" Ignoring direct write of " + fileName + " confirmed after its ticket expired");
+                return false;
+            }
+            AccessTicket confirmed = confirmedGrants.get(fileName);
+            if (confirmed != null && confirmed.getGrantId() > ticket.getGrantId()) {
+                System.err.println(" Ignoring superseded direct write of " + fileName);
+                return false;
+            }
+
+            contentCache.invalidate(fileName);
+            List<String> verified = new ArrayList<>();
+            for (String nodeName : nodeNames) {
+                FileService node = registeredNodes.get(nodeName);
+                if (node == null || !ticket.getNodeNames().contains(nodeName)) continue;
+                try {
+                    if (node.appliedGrant(fileName) != ticket.getGrantId()) continue;
+                    FileInfo info = node.statFile(fileName);
+                    if (info != null && info.getSize() == size) verified.add(nodeName);
+                } catch (Exception e) {
+                    System.err.println(" Could not verify " + fileName + " on node " + nodeName + ": " + e.getMessage());
+                }
+            }
+            if (verified.isEmpty()) return false;
+
+            catalog.recordWrite(fileName, verified, size, System.currentTimeMillis());
+            confirmedGrants.put(fileName, ticket);
+            System.out.println(" Direct write of " + fileName + " confirmed on: " + verified);
+            return verified.size() >= writeQuorum();
+        } finally {
+            lock.release();
+        }
+    }
+
+    private List<DirectFileService> nodesFor(List<String> nodeNames) {
+        List<DirectFileService> nodes = new ArrayList<>(nodeNames.size());
+        for (String nodeName : nodeNames) {
+            nodes.add(directNodes.get(nodeName));
+        }
+        return nodes;
+    }
+
+    private Transfers.Transfer requireTransfer(String token, String handle, boolean write) throws RemoteException {
+        if (userManager.getUserByToken(token) == null) throw new RemoteException(" Invalid token.");
+        Transfers.Transfer transfer = transfers.get(token, handle);
+        if (transfer == null || transfer.isWrite() != write) throw new RemoteException(" Unknown or expired transfer.");
+        return transfer;
+    }
+
+    private void expireTransfers() {
+        for (Transfers.Transfer transfer : transfers.expireIdle()) {
+            System.out.println("[Coordinator] Expired idle transfer of " + transfer.getFileName());
+            if (transfer.isWrite()) abortOnNodes(transfer.getFileName(), transfer.getNodeHandles());
+        }
+    }
+
+    private void expireConfirmedGrants() {
+        long now = System.currentTimeMillis();
+        confirmedGrants.values().removeIf(ticket -> ticket.getExpiresAt() < now);
+    }
 
-        for (FileService node : sortedNodes) {
+    private void abortOnNodes(String fileName, Map<String, String> nodeHandles) {
+        for (Map.Entry<String, String> entry : new HashMap<>(nodeHandles).entrySet()) {
+            FileService node = registeredNodes.get(entry.getKey());
+            if (node == null) continue;
+            replicaPool.execute(() -> {
+                try {
+                    node.abortWrite(entry.getValue());
+                } catch (Exception e) {
+                    System.err.println(" Failed to abort upload of " + fileName + " on node " + entry.getKey() + ": " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    private List<FileResult> inRequestOrder(List<String> fileNames, Map<String, FileResult> results) {
+        List<FileResult> ordered = new ArrayList<>(fileNames.size());
+        for (String fileName : fileNames) {
+            ordered.add(results.getOrDefault(fileName, FileResult.failed(fileName, "Not processed.")));
+        }
+        return ordered;
+    }
+
+    // Caller must hold the file's write lock.
+    private boolean replicate(String fileName, byte[] data, List<String> targets, String logPrefix) {
+        int quorum = writeQuorum();
+        if (targets.size() < quorum) {
+            System.err.println(" Not enough healthy nodes for write quorum (" + targets.size() + "/" + quorum + ").");
+            return false;
+        }
+
+        contentCache.invalidate(fileName);
+        QuorumWriter.Result result = quorumWriter.write(targets, quorum, nodeName -> {
+            registeredNodes.get(nodeName).writeFile(fileName, data);
+            System.out.println(logPrefix + nodeName);
+        });
+        if (result.getAcked().isEmpty()) {
+            System.err.println(" Failed to write to any healthy node.");
+            return false;
+        }
+
+        return recordReplicatedWrite(fileName, data.length, result);
+    }
+
+    // Records the acked replicas, then folds in late acks at the same version once they land.
+    private boolean recordReplicatedWrite(String fileName, long size, QuorumWriter.Result result) {
+        long version = catalog.recordWrite(fileName, result.getAcked(), size, System.currentTimeMillis());
+        AtomicBoolean abandoned = new AtomicBoolean();
+        CompletableFuture<?> tail = result.getLateAcks().thenAccept(late -> {
+            if (abandoned.get()) {
+                writeOff(fileName, late);
+                return;
+            }
+            for (String nodeName : late) {
+                catalog.addReplica(fileName, nodeName, version, System.currentTimeMillis());
+            }
+        });
+        trackReplication(fileName, new Replication(tail, abandoned));
+
+        if (!result.isQuorumReached()) {
+            System.err.println(" Write quorum not reached for " + fileName + " (" + result.getAcked().size() + " replica(s) acked).");
+        }
+        return result.isQuorumReached();
+    }
+
+    // W, capped at the ring members alive right now so a cluster smaller than W still takes writes.
+    private int writeQuorum() {
+        int alive = 0;
+        for (String nodeName : ring.members()) {
+            if (failureDetector.isAlive(nodeName)) alive++;
+        }
+        int quorum = Math.max(1, Math.min(WRITE_QUORUM, alive));
+        if (quorum < WRITE_QUORUM) {
+            if (quorumDegraded.compareAndSet(false, true)) {
+                System.err.println("[Coordinator] Only " + alive + " live node(s), write quorum lowered from "
+                        + WRITE_QUORUM + " to " + quorum + ".");
+            }
+        } else if (quorumDegraded.compareAndSet(true, false)) {
+            System.out.println("[Coordinator] Write quorum back to " + WRITE_QUORUM + ".");
+        }
+        return quorum;
+    }
+
+    // Replica calls of one write that were still running when it returned.
+    private static final class Replication {
+        final CompletableFuture<?> tail;
+        final AtomicBoolean abandoned;
+
+        Replication(CompletableFuture<?> tail, AtomicBoolean abandoned) {
+            this.tail = tail;
+            this.abandoned = abandoned;
+        }
+    }
+
+    private void trackReplication(String fileName, Replication replication) {
+        pendingReplication.put(fileName, replication);
+        replication.tail.whenComplete((v, e) -> pendingReplication.remove(fileName, replication));
+    }
+
+    // Replica writes still in flight from the previous write get WRITE_TIMEOUT_MS to land before the next one
+    // starts. After that they are abandoned: whatever they leave on their nodes is written off once they finish.
+    private void awaitPendingReplication(String fileName) {
+        awaitPendingReplication(Collections.singletonList(fileName));
+    }
+
+    // A batch waits for the tails of all its files against one deadline, so it holds its stripes for at most
+    // WRITE_TIMEOUT_MS however many of them are still replicating.
+    private void awaitPendingReplication(Collection<String> fileNames) {
+        Map<Replication, List<String>> pending = new HashMap<>();
+        for (String fileName : fileNames) {
+            Replication replication = pendingReplication.get(fileName);
+            if (replication != null) pending.computeIfAbsent(replication, r -> new ArrayList<>()).add(fileName);
+        }
+        if (pending.isEmpty()) return;
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WRITE_TIMEOUT_MS);
+        for (Map.Entry<Replication, List<String>> entry : pending.entrySet()) {
+            Replication replication = entry.getKey();
+            List<String> names = entry.getValue();
             try {
-                String nodeName = node.getNodeName();
-                List<String> allFiles = node.listFiles();
-
-                for (String path : allFiles) {
-                    if (path.endsWith("/" + filename)) {
-                        String section = path.split("/")[0];
-                        if (section.equals(userSection) && !hasReadPermission) {
-                            throw new RemoteException("ACCESS_DENIED_SELF_SECTION");
-                        }
-                        nodeRequestCount.put(nodeName, nodeRequestCount.getOrDefault(nodeName, 0) + 1);
-                        System.out.println(" Found in [" + section + "] on healthy node: " + nodeName);
-                        return node.readFile(path);
-                    }
+                replication.tail.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                replication.abandoned.set(true);
+                for (String fileName : names) pendingReplication.remove(fileName, replication);
+                System.err.println(" Gave up waiting for late replicas of " + names + ", they will be repaired.");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                System.err.println(" Pending replication for " + names + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // An abandoned replica write may land after a newer version on the same node, so its node is dropped from
+    // the catalog once the write settles and the rebalancer copies the current version back.
+    private void writeOff(String fileName, Collection<String> nodeNames) {
+        if (nodeNames.isEmpty()) return;
+        writeOffPool.execute(() -> {
+            FileLocks.Handle lock = fileLocks.write(fileName);
+            try {
+                for (String nodeName : nodeNames) {
+                    catalog.removeReplica(fileName, nodeName);
                 }
+            } finally {
+                lock.release();
+            }
+            System.out.println("[Catalog] Wrote off late replica(s) " + nodeNames + " of " + fileName + ".");
+            rebalancer.repair(fileName);
+        });
+    }
 
-            } catch (RemoteException e) {
-                System.err.println(" Skipping node (RemoteException): " + e.getMessage());
-            } catch (Exception e) {
-                System.err.println(" Skipping node (Other error): " + e.getMessage());
+    // Ring owners first; current replicas outside the owner set are rewritten too so they never go stale.
+    private List<String> placementFor(String fileName, FileCatalog.Entry entry) {
+        List<String> targets = ring.owners(fileName, REPLICATION_FACTOR, failureDetector::isAlive);
+        if (entry != null) {
+            for (String nodeName : healthyReplicas(entry)) {
+                if (!targets.contains(nodeName)) targets.add(nodeName);
+            }
+        }
+        return targets;
+    }
+
+    @Override
+    public List<DirectFileService> getReplicaNodes(String fileName) throws RemoteException {
+        List<DirectFileService> nodes = new ArrayList<>();
+        for (String nodeName : ring.owners(fileName, REPLICATION_FACTOR, failureDetector::isAlive)) {
+            nodes.add(directNodes.get(nodeName));
+        }
+        return nodes;
+    }
+
+    // Owner names for many files in one call, for callers that already hold the node stubs.
+    @Override
+    public Map<String, List<String>> getReplicaOwners(List<String> fileNames) throws RemoteException {
+        Map<String, List<String>> owners = new HashMap<>();
+        for (String fileName : fileNames) {
+            owners.put(fileName, ring.owners(fileName, REPLICATION_FACTOR, failureDetector::isAlive));
+        }
+        return owners;
+    }
+
+    @Override
+    public byte[] requestFile(String token, String filename) throws RemoteException {
+        User user = userManager.getUserByToken(token);
+        if (user == null) throw new RemoteException("Invalid token.");
+
+        String username = user.getUsername();
+        String userSection = user.getDepartment();
+        boolean hasReadPermission = user.getPermissions().contains("read");
+
+        System.out.println("[Coordinator] " + username + " from [" + userSection + "] requested file: " + filename);
+
+        for (FileCatalog.Entry entry : catalog.findByBaseName(filename)) {
+            String path = entry.getFileName();
+            String section = path.split("/")[0];
+            if (section.equals(userSection) && !hasReadPermission) {
+                throw new RemoteException("ACCESS_DENIED_SELF_SECTION");
+            }
+
+            FileLocks.Handle lock = fileLocks.read(path);
+            try {
+                byte[] data = readFromReplicas(entry, healthyReplicas(entry), " Found in [" + section + "] on healthy node: ");
+                if (data != null) return data;
+            } finally {
+                lock.release();
             }
         }
 
         throw new RemoteException("FILE_NOT_FOUND");
     }
 
+    // Same visibility as requestFile: any section, located by basename glob through the catalog's name index.
+    @Override
+    public List<FileInfo> searchFiles(String token, String pattern) throws RemoteException {
+        User user = userManager.getUserByToken(token);
+        if (user == null) throw new RemoteException("Invalid token.");
+        if (pattern == null || pattern.isEmpty() || pattern.contains("/"))
+            throw new RemoteException("Invalid search pattern.");
+
+        List<FileInfo> results = new ArrayList<>();
+        for (FileCatalog.Entry entry : catalog.search(pattern, SEARCH_LIMIT)) {
+            results.add(new FileInfo(entry.getFileName(), entry.getSize(), entry.getLastModified()));
+        }
+        return results;
+    }
+
     @Override
-    public synchronized User getUserInfo(String token) throws RemoteException {
+    public User getUserInfo(String token) throws RemoteException {
         return userManager.getUserByToken(token);
     }
 
     @Override
-    public synchronized void logout(String token) throws RemoteException {
-        User user = userManager.getUserByToken(token);
+    public void logout(String token) throws RemoteException {
+        User user = userManager.logout(token);
         if (user != null) {
-            user.setToken(null);
-            userManager.saveUsersPublic();
             System.out.println("[Coordinator] User '" + user.getUsername() + "' logged out.");
         }
     }
@@ -297,18 +1199,47 @@ public class Coordinator extends UnicastRemoteObject implements CoordinatorServi
         System.out.println("\n=== System Status ===");
         System.out.println("Total registered nodes: " + registeredNodes.size());
 
-        List<FileService> healthyNodes = getHealthyNodes();
-        System.out.println("Healthy nodes: " + healthyNodes.size());
+        System.out.println("Healthy nodes: " + healthyNodeNames().size());
+        System.out.println("Hedged reads: " + hedgedReader.describe());
+        System.out.println("Content cache: " + contentCache.describe());
+        System.out.println("Open transfers: " + transfers.size());
+        System.out.println("Catalog files: " + catalog.size() + " (replication factor " + REPLICATION_FACTOR + ", ring members " + ring.members().size() + ")");
 
-        for (Map.Entry<String, Boolean> entry : nodeHealthStatus.entrySet()) {
-            String status = entry.getValue() ? " ONLINE" : " OFFLINE";
-            System.out.println("Node " + entry.getKey() + ": " + status);
+        for (String nodeName : registeredNodes.keySet()) {
+            FailureDetector.Status status = failureDetector.getStatus(nodeName);
+            String label = status == FailureDetector.Status.ALIVE ? " ONLINE"
+                    : status == FailureDetector.Status.SUSPECT ? " SUSPECT" : " OFFLINE";
+            NodeStats stats = failureDetector.getStats(nodeName);
+            System.out.println("Node " + nodeName + ": " + label + (stats == null ? "" : " (" + stats + ")")
+                    + " [" + replicaSelector.describe(nodeName) + "]" + describeCache(nodeName, status));
         }
         System.out.println("==================\n");
     }
 
+    private String describeCache(String nodeName, FailureDetector.Status status) {
+        if (status != FailureDetector.Status.ALIVE) return "";
+        try {
+            return " [" + registeredNodes.get(nodeName).getCacheStats() + "]";
+        } catch (RemoteException e) {
+            return "";
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
     public static void main(String[] args) {
         try {
+            // Read once when the RMI transport loads, so they have to be in place before the first remote call.
+            // A call to a hung node blocks either on the reply or, on a fresh connection, on the handshake.
+            for (String property : new String[]{"sun.rmi.transport.tcp.responseTimeout", "sun.rmi.transport.tcp.handshakeTimeout"}) {
+                if (System.getProperty(property) == null) System.setProperty(property, String.valueOf(RESPONSE_TIMEOUT_MS));
+            }
             System.out.println("[Coordinator] Starting RMI registry...");
             LocateRegistry.createRegistry(1099);
 
@@ -327,6 +1258,7 @@ public class Coordinator extends UnicastRemoteObject implements CoordinatorServi
         } catch (Exception e) {
             System.err.println("[Coordinator] Error: " + e.getMessage());
             e.printStackTrace();
+            System.exit(1);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package coordinator;
+
+import rmi.NodeStats;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+public class FailureDetector {
+
+    public enum Status { ALIVE, SUSPECT, DEAD }
+
+    private static class NodeState {
+        volatile long lastHeartbeat;
+        volatile NodeStats stats;
+        volatile Status status = Status.ALIVE;
+    }
+
+    private final Map<String, NodeState> nodes = new ConcurrentHashMap<>();
+    private final long suspectAfterMs;
+    private final long deadAfterMs;
+    private final BiConsumer<String, Status> onTransition;
+
+    public FailureDetector(long suspectAfterMs, long deadAfterMs, BiConsumer<String, Status> onTransition) {
+        this.suspectAfterMs = suspectAfterMs;
+        this.deadAfterMs = deadAfterMs;
+        this.onTransition = onTransition;
+    }
+
+    public boolean heartbeat(String nodeName, NodeStats stats) {
+        NodeState state = nodes.get(nodeName);
+        if (state == null) return false;
+
+        state.lastHeartbeat = System.currentTimeMillis();
+        if (stats != null) state.stats = stats;
+        transition(nodeName, state, Status.ALIVE);
+        return true;
+    }
+
+    public void register(String nodeName) {
+        NodeState state = nodes.computeIfAbsent(nodeName, n -> new NodeState());
+        state.lastHeartbeat = System.currentTimeMillis();
+        transition(nodeName, state, Status.ALIVE);
+    }
+
+    public boolean isAlive(String nodeName) {
+        NodeState state = nodes.get(nodeName);
+        return state != null && state.status == Status.ALIVE;
+    }
+
+    public Status getStatus(String nodeName) {
+        NodeState state = nodes.get(nodeName);
+        return state == null ? Status.DEAD : state.status;
+    }
+
+    public NodeStats getStats(String nodeName) {
+        NodeState state = nodes.get(nodeName);
+        return state == null ? null : state.stats;
+    }
+
+    public Set<String> nodeNames() {
+        return nodes.keySet();
+    }
+
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, NodeState> entry : nodes.entrySet()) {
+            NodeState state = entry.getValue();
+            long silence = now - state.lastHeartbeat;
+            if (silence > deadAfterMs) {
+                transition(entry.getKey(), state, Status.DEAD);
+            } else if (silence > suspectAfterMs) {
+                transition(entry.getKey(), state, Status.SUSPECT);
+            }
+        }
+    }
+
+    // The callback runs under the node's monitor, so a DEAD and an ALIVE transition racing on two threads
+    // reach it in the order they were decided. It must stay short and must not call back into this class.
+    private void transition(String nodeName, NodeState state, Status next) {
+        synchronized (state) {
+            if (state.status == next) return;
+            state.status = next;
+            if (onTransition != null) onTransition.accept(nodeName, next);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package coordinator;
+
+import rmi.FileInfo;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+public class FileCatalog {
+
+    // Node clocks, filesystem timestamps and slow replica writes are not exact.
+    private static final long MTIME_TOLERANCE_MS = 5000;
+
+    public static class Entry {
+        private final String fileName;
+        private final Set<String> replicas;
+        private final long size;
+        private final long version;
+        private final long lastModified;
+        private final boolean deleted;
+
+        Entry(String fileName, Set<String> replicas, long size, long version, long lastModified, boolean deleted) {
+            this.fileName = fileName;
+            this.replicas = Collections.unmodifiableSet(replicas);
+            this.size = size;
+            this.version = version;
+            this.lastModified = lastModified;
+            this.deleted = deleted;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public Set<String> getReplicas() {
+            return replicas;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public boolean isDeleted() {
+            return deleted;
+        }
+
+        Entry withReplicas(Set<String> newReplicas) {
+            return new Entry(fileName, newReplicas, size, version, lastModified, deleted);
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final NameIndex names = new NameIndex();
+    // Live files by ring position, so a ring change only has to look at the arcs that moved.
+    private final ConcurrentSkipListMap<Long, Set<String>> positions = new ConcurrentSkipListMap<>();
+
+    public Entry get(String fileName) {
+        Entry entry = entries.get(fileName);
+        return entry == null || entry.deleted ? null : entry;
+    }
+
+    public Collection<Entry> entries() {
+        List<Entry> live = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (!entry.deleted) live.add(entry);
+        }
+        return live;
+    }
+
+    // Live files whose ring position lies in (from, to], wrapping past the top; from == to covers the whole ring.
+    public List<Entry> inRange(long from, long to) {
+        Collection<Set<String>> buckets;
+        if (from < to) {
+            buckets = positions.subMap(from, false, to, true).values();
+        } else {
+            buckets = new ArrayList<>(positions.tailMap(from, false).values());
+            buckets.addAll(positions.headMap(to, true).values());
+        }
+        List<String> fileNames = new ArrayList<>();
+        for (Set<String> bucket : buckets) {
+            fileNames.addAll(bucket);
+        }
+        return live(fileNames);
+    }
+
+    public List<Entry> findByBaseName(String baseName) {
+        return live(names.lookup(baseName));
+    }
+
+    // Glob over basenames ('*' and '?'), capped at limit matches.
+    public List<Entry> search(String pattern, int limit) {
+        return live(names.search(pattern, limit));
+    }
+
+    public int size() {
+        return entries().size();
+    }
+
+    public long recordWrite(String fileName, Collection<String> nodes, long size, long writtenAt) {
+        Entry updated = entries.compute(fileName, (name, existing) -> {
+            long version = existing == null ? 1 : existing.version + 1;
+            return new Entry(name, new HashSet<>(nodes), size, version, writtenAt, false);
+        });
+        reindex(fileName);
+        return updated.version;
+    }
+
+    public void addReplica(String fileName, String nodeName, long version, long writtenAt) {
+        entries.computeIfPresent(fileName, (name, existing) -> {
+            if (existing.deleted || existing.version != version) return existing;
+            Set<String> replicas = new HashSet<>(existing.replicas);
+            replicas.add(nodeName);
+            return new Entry(name, replicas, existing.size, existing.version,
+                    Math.max(existing.lastModified, writtenAt), false);
+        });
+    }
+
+    public void removeReplica(String fileName, String nodeName) {
+        entries.computeIfPresent(fileName, (name, existing) -> {
+            if (!existing.replicas.contains(nodeName)) return existing;
+            Set<String> replicas = new HashSet<>(existing.replicas);
+            replicas.remove(nodeName);
+            return existing.withReplicas(replicas);
+        });
+    }
+
+    // The tombstone's replicas are the nodes that may still hold a copy; each drops out once it confirms the delete.
+    public void recordDelete(String fileName, Collection<String> confirmed, long deletedAt) {
+        entries.compute(fileName, (name, existing) -> {
+            long version = existing == null ? 1 : existing.version + 1;
+            Set<String> unconfirmed = existing == null ? new HashSet<>() : new HashSet<>(existing.replicas);
+            unconfirmed.removeAll(confirmed);
+            return new Entry(name, unconfirmed, 0, version, deletedAt, true);
+        });
+        reindex(fileName);
+    }
+
+    // Drops tombstones every replica has confirmed, and any older than graceMs. A node that comes back after
+    // the grace period with a stale copy re-adds it as a live file.
+    public int purgeTombstones(long now, long graceMs) {
+        int purged = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.deleted && (entry.replicas.isEmpty() || now - entry.lastModified > graceMs)
+                    && entries.remove(entry.fileName, entry)) {
+                purged++;
+            }
+        }
+        return purged;
+    }
+
+    // A copy holds the entry's version unless its size differs or it was modified after the entry was written.
+    public static boolean isCurrentCopy(Entry entry, FileInfo info) {
+        return info.getSize() == entry.size && info.getLastModified() <= entry.lastModified + MTIME_TOLERANCE_MS;
+    }
+
+    // Returns files the node still holds although they were deleted after its copy was written. Live files
+    // that lost replicas or gained a new version here are passed to needsRepair.
+    public List<String> reconcile(String nodeName, List<FileInfo> inventory, Consumer<String> needsRepair) {
+        List<String> deletedOnNode = new ArrayList<>();
+        Set<String> present = new HashSet<>();
+
+        for (FileInfo info : inventory) {
+            present.add(info.getName());
+            Entry before = entries.get(info.getName());
+            if (before != null && before.deleted && info.getLastModified() <= before.lastModified + MTIME_TOLERANCE_MS) {
+                deletedOnNode.add(info.getName());
+                continue;
+            }
+            Entry after = entries.compute(info.getName(), (name, existing) -> merge(name, existing, nodeName, info));
+            reindex(info.getName());
+            if (before == null || before.deleted || after.version != before.version || !after.replicas.containsAll(before.replicas)) {
+                needsRepair.accept(info.getName());
+            }
+        }
+
+        for (Entry entry : entries.values()) {
+            if (entry.replicas.contains(nodeName) && !present.contains(entry.fileName)) {
+                removeReplica(entry.fileName, nodeName);
+                if (!entry.deleted) needsRepair.accept(entry.fileName);
+            }
+        }
+        return deletedOnNode;
+    }
+
+    // Re-reads the entry so racing updates converge on whatever the catalog holds last.
+    private void reindex(String fileName) {
+        Entry entry = entries.get(fileName);
+        long position = HashRing.position(fileName);
+        if (entry == null || entry.deleted) {
+            names.remove(fileName);
+            positions.computeIfPresent(position, (p, bucket) -> {
+                if (!bucket.contains(fileName)) return bucket;
+                Set<String> rest = new HashSet<>(bucket);
+                rest.remove(fileName);
+                return rest.isEmpty() ? null : rest;
+            });
+        } else {
+            names.add(fileName);
+            // Buckets are replaced, never changed in place: the skip list may run these functions more than once.
+            positions.compute(position, (p, bucket) -> {
+                if (bucket != null && bucket.contains(fileName)) return bucket;
+                Set<String> grown = bucket == null ? new HashSet<>() : new HashSet<>(bucket);
+                grown.add(fileName);
+                return grown;
+            });
+        }
+    }
+
+    private List<Entry> live(Collection<String> fileNames) {
+        List<Entry> matches = new ArrayList<>();
+        for (String fileName : fileNames) {
+            Entry entry = get(fileName);
+            if (entry != null) matches.add(entry);
+        }
+        return matches;
+    }
+
+    private Entry merge(String name, Entry existing, String nodeName, FileInfo info) {
+        if (existing == null || existing.deleted) {
+            long version = existing == null ? 1 : existing.version + 1;
+            return new Entry(name, new HashSet<>(Collections.singleton(nodeName)), info.getSize(), version, info.getLastModified(), false);
+        }
+        if (info.getLastModified() > existing.lastModified + MTIME_TOLERANCE_MS) {
+            // Changed behind the coordinator's back (e.g. nightly sync): this copy is now the newest.
+            return new Entry(name, new HashSet<>(Collections.singleton(nodeName)), info.getSize(), existing.version + 1, info.getLastModified(), false);
+        }
+
+        boolean listed = existing.replicas.contains(nodeName);
+        boolean current = info.getSize() == existing.size
+                && (listed || info.getLastModified() + MTIME_TOLERANCE_MS >= existing.lastModified);
+        if (current == listed) return existing;
+
+        Set<String> replicas = new HashSet<>(existing.replicas);
+        if (current) {
+            replicas.add(nodeName);
+        } else {
+            replicas.remove(nodeName);
+        }
+        return existing.withReplicas(replicas);
+    }
+}
@@ -0,0 +1,91 @@
+package coordinator;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Fixed table of read/write locks picked by file-name hash, like PathLocks on the nodes: reads of any files run
+// in parallel, writes only wait for their own stripe, and memory stays bounded however many names pass through.
+public class FileLocks {
+
+    private final ReentrantReadWriteLock[] stripes;
+    private final int mask;
+
+    public FileLocks(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new ReentrantReadWriteLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+        this.mask = size - 1;
+    }
+
+    public Handle read(String fileName) {
+        return readAll(Collections.singletonList(fileName));
+    }
+
+    public Handle write(String fileName) {
+        return writeAll(Collections.singletonList(fileName));
+    }
+
+    // Multi-file handles take each stripe once, in index order, so batches never deadlock against each other.
+    public Handle readAll(Collection<String> fileNames) {
+        List<Lock> locks = new ArrayList<>();
+        for (int stripe : stripesOf(fileNames)) {
+            locks.add(stripes[stripe].readLock());
+        }
+        return acquire(locks);
+    }
+
+    public Handle writeAll(Collection<String> fileNames) {
+        List<Lock> locks = new ArrayList<>();
+        for (int stripe : stripesOf(fileNames)) {
+            locks.add(stripes[stripe].writeLock());
+        }
+        return acquire(locks);
+    }
+
+    private SortedSet<Integer> stripesOf(Collection<String> fileNames) {
+        SortedSet<Integer> indexes = new TreeSet<>();
+        for (String fileName : fileNames) {
+            int h = fileName.hashCode();
+            indexes.add((h ^ (h >>> 16)) & mask);
+        }
+        return indexes;
+    }
+
+    private static Handle acquire(List<Lock> locks) {
+        List<Lock> held = new ArrayList<>(locks.size());
+        try {
+            for (Lock lock : locks) {
+                lock.lock();
+                held.add(lock);
+            }
+        } catch (RuntimeException e) {
+            new Handle(held).release();
+            throw e;
+        }
+        return new Handle(held);
+    }
+
+    // Released in a finally block right after the lock is taken, as with java.util.concurrent locks; close()
+    // does the same for try-with-resources callers.
+    public static class Handle implements AutoCloseable {
+        private final List<Lock> locks;
+
+        private Handle(List<Lock> locks) {
+            this.locks = locks;
+        }
+
+        public void release() {
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            release();
+        }
+    }
+}
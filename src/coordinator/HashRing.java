@@ -0,0 +1,86 @@
+package coordinator;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Predicate;
+
+public class HashRing {
+
+    private final int virtualNodes;
+    private volatile TreeMap<Long, String> ring = new TreeMap<>();
+
+    public HashRing(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    public synchronized boolean add(String nodeName) {
+        if (ring.containsValue(nodeName)) return false;
+        TreeMap<Long, String> next = new TreeMap<>(ring);
+        for (int i = 0; i < virtualNodes; i++) {
+            next.put(hash(nodeName + "#" + i), nodeName);
+        }
+        ring = next;
+        return true;
+    }
+
+    public synchronized boolean remove(String nodeName) {
+        if (!ring.containsValue(nodeName)) return false;
+        TreeMap<Long, String> next = new TreeMap<>(ring);
+        next.values().removeIf(nodeName::equals);
+        ring = next;
+        return true;
+    }
+
+    public Set<String> members() {
+        return new HashSet<>(ring.values());
+    }
+
+    public List<String> owners(String key, int count) {
+        return owners(key, count, n -> true);
+    }
+
+    // Walks clockwise from the key's position, skipping nodes the filter rejects.
+    public List<String> owners(String key, int count, Predicate<String> usable) {
+        return owners(ring, hash(key), count, usable);
+    }
+
+    // Read-only view of the vnode positions; later membership changes replace it rather than modify it.
+    public NavigableMap<Long, String> snapshot() {
+        return Collections.unmodifiableNavigableMap(ring);
+    }
+
+    public static long position(String key) {
+        return hash(key);
+    }
+
+    static List<String> owners(NavigableMap<Long, String> snapshot, long position, int count, Predicate<String> usable) {
+        List<String> owners = new ArrayList<>(count);
+        if (snapshot.isEmpty()) return owners;
+
+        Iterator<String> clockwise = snapshot.tailMap(position, true).values().iterator();
+        Iterator<String> wrapped = snapshot.headMap(position, false).values().iterator();
+        Set<String> seen = new HashSet<>();
+        while (owners.size() < count && (clockwise.hasNext() || wrapped.hasNext())) {
+            String nodeName = clockwise.hasNext() ? clockwise.next() : wrapped.next();
+            if (seen.add(nodeName) && usable.test(nodeName)) {
+                owners.add(nodeName);
+            }
+        }
+        return owners;
+    }
+
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long h = 0;
+            for (int i = 0; i < 8; i++) {
+                h = (h << 8) | (digest[i] & 0xff);
+            }
+            return h;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package coordinator;
+
+import rmi.FileService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class HedgedReader {
+
+    private static final int LATENCY_SAMPLES = 1024;
+    private static final double HEDGE_PERCENTILE = 0.95;
+    private static final long MIN_DELAY_MS = 5;
+    private static final long MAX_DELAY_MS = 2000;
+    private static final long DEFAULT_DELAY_MS = 50;
+
+    public interface NodeRead {
+        byte[] apply(FileService node) throws Exception;
+    }
+
+    public static class Result {
+        private final byte[] data;
+        private final String nodeName;
+
+        Result(byte[] data, String nodeName) {
+            this.data = data;
+            this.nodeName = nodeName;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public String getNodeName() {
+            return nodeName;
+        }
+    }
+
+    private final Map<String, FileService> nodes;
+    private final ReplicaSelector selector;
+    private final ExecutorService pool;
+    private final double hedgeRatio;
+    private final double maxHedgeTokens;
+
+    private final long[] samples = new long[LATENCY_SAMPLES];
+    private int sampleCount;
+    private int sampleIndex;
+    private long cachedDelayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_DELAY_MS);
+
+    private double hedgeTokens;
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final AtomicLong hedgesDenied = new AtomicLong();
+
+    public HedgedReader(Map<String, FileService> nodes, ReplicaSelector selector, ExecutorService pool,
+                        double hedgeRatio, double maxHedgeTokens) {
+        this.nodes = nodes;
+        this.selector = selector;
+        this.pool = pool;
+        this.hedgeRatio = hedgeRatio;
+        this.maxHedgeTokens = maxHedgeTokens;
+    }
+
+    public Result read(String fileName, List<String> replicas) throws InterruptedException {
+        return read(replicas, node -> node.readFile(fileName));
+    }
+
+    // Replicas are tried in the given order; returns null when all of them failed.
+    public Result read(List<String> replicas, NodeRead call) throws InterruptedException {
+        if (replicas.isEmpty()) return null;
+        earnHedgeToken();
+
+        CompletionService<Result> completion = new ExecutorCompletionService<>(pool);
+        List<Future<Result>> inFlight = new ArrayList<>();
+        String primary = replicas.get(0);
+        int next = 0;
+        int pending = 0;
+        boolean hedged = false;
+
+        inFlight.add(completion.submit(readTask(call, replicas.get(next++))));
+        pending++;
+
+        try {
+            while (pending > 0) {
+                boolean canHedge = !hedged && next < replicas.size();
+                Future<Result> done = canHedge
+                        ? completion.poll(hedgeDelayNanos(), TimeUnit.NANOSECONDS)
+                        : completion.take();
+
+                if (done == null) {
+                    hedged = true;
+                    if (spendHedgeToken()) {
+                        hedgesSent.incrementAndGet();
+                        inFlight.add(completion.submit(readTask(call, replicas.get(next++))));
+                        pending++;
+                    } else {
+                        hedgesDenied.incrementAndGet();
+                    }
+                    continue;
+                }
+
+                pending--;
+                try {
+                    Result result = done.get();
+                    if (hedged && !result.nodeName.equals(primary)) hedgesWon.incrementAndGet();
+                    return result;
+                } catch (ExecutionException e) {
+                    // Plain failover after an error does not count against the hedge budget.
+                    if (next < replicas.size()) {
+                        inFlight.add(completion.submit(readTask(call, replicas.get(next++))));
+                        pending++;
+                    }
+                }
+            }
+            return null;
+        } finally {
+            // Only reads still queued are stopped here. A losing read already on the wire runs on until its
+            // node answers or the RMI response timeout set by the coordinator ends it.
+            for (Future<Result> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    public String describe() {
+        return "hedge delay " + TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos()) + "ms, sent " + hedgesSent.get()
+                + ", won " + hedgesWon.get() + ", denied by budget " + hedgesDenied.get();
+    }
+
+    private Callable<Result> readTask(NodeRead call, String nodeName) {
+        return () -> {
+            long started = selector.begin(nodeName);
+            try {
+                byte[] data = call.apply(nodes.get(nodeName));
+                selector.end(nodeName, started, true);
+                recordLatency(System.nanoTime() - started);
+                return new Result(data, nodeName);
+            } catch (Exception e) {
+                selector.end(nodeName, started, false);
+                System.err.println(" Skipping node " + nodeName + ": " + e.getMessage());
+                throw e;
+            }
+        };
+    }
+
+    private synchronized void recordLatency(long nanos) {
+        samples[sampleIndex] = nanos;
+        sampleIndex = (sampleIndex + 1) % samples.length;
+        if (sampleCount < samples.length) sampleCount++;
+
+        if (sampleCount >= 20 && sampleIndex % 16 == 0) {
+            long[] sorted = Arrays.copyOf(samples, sampleCount);
+            Arrays.sort(sorted);
+            long p = sorted[(int) Math.min(sorted.length - 1, Math.floor(sorted.length * HEDGE_PERCENTILE))];
+            cachedDelayNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(MIN_DELAY_MS),
+                    Math.min(TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_MS), p));
+        }
+    }
+
+    private synchronized long hedgeDelayNanos() {
+        return cachedDelayNanos;
+    }
+
+    private synchronized void earnHedgeToken() {
+        hedgeTokens = Math.min(maxHedgeTokens, hedgeTokens + hedgeRatio);
+    }
+
+    private synchronized boolean spendHedgeToken() {
+        if (hedgeTokens < 1) return false;
+        hedgeTokens -= 1;
+        return true;
+    }
+}
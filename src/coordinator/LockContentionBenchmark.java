@@ -0,0 +1,98 @@
+package coordinator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Throughput of coordinator requests against the number of client threads. Every request holds its file's
+// lock for one simulated node round trip, the way readFile and writeFile do; one request in writeEvery is a
+// write. The "global" column serializes everything on one monitor, which is what the old synchronized
+// methods amounted to; the "striped" column uses FileLocks.
+//
+// java -cp out coordinator.LockContentionBenchmark [secondsPerStep] [nodeCallMicros] [writeEvery] [maxThreads]
+public class LockContentionBenchmark {
+
+    private static final String[] DEPARTMENTS = {"qa", "dev", "design"};
+    private static final int FILES = 10000;
+
+    private interface Locking {
+        void run(String fileName, boolean write, Runnable call);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long stepMs = (args.length > 0 ? Long.parseLong(args[0]) : 2) * 1000;
+        long callNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 1 ? Long.parseLong(args[1]) : 2000);
+        int writeEvery = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int maxThreads = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+
+        String[] fileNames = new String[FILES];
+        for (int i = 0; i < FILES; i++) {
+            fileNames[i] = DEPARTMENTS[i % DEPARTMENTS.length] + "/file" + i + ".txt";
+        }
+
+        Object monitor = new Object();
+        Locking global = (fileName, write, call) -> {
+            synchronized (monitor) {
+                call.run();
+            }
+        };
+        FileLocks fileLocks = new FileLocks(1024);
+        Locking striped = (fileName, write, call) -> {
+            FileLocks.Handle lock = write ? fileLocks.write(fileName) : fileLocks.read(fileName);
+            try {
+                call.run();
+            } finally {
+                lock.release();
+            }
+        };
+
+        Runnable nodeCall = () -> LockSupport.parkNanos(callNanos);
+        System.out.printf("Node round trip %d us, 1 write in %d, %d ms per step%n",
+                TimeUnit.NANOSECONDS.toMicros(callNanos), writeEvery, stepMs);
+        System.out.printf("%8s %14s %14s %9s%n", "threads", "global ops/s", "striped ops/s", "speedup");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double serialized = measure(global, fileNames, threads, writeEvery, nodeCall, stepMs);
+            double parallel = measure(striped, fileNames, threads, writeEvery, nodeCall, stepMs);
+            System.out.printf("%8d %14.0f %14.0f %8.1fx%n", threads, serialized, parallel, parallel / serialized);
+        }
+    }
+
+    private static double measure(Locking locking, String[] fileNames, int threads, int writeEvery,
+                                  Runnable nodeCall, long stepMs) throws InterruptedException {
+        LongAdder completed = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch started = new CountDownLatch(threads);
+        List<Thread> clients = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread client = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                started.countDown();
+                while (running.get()) {
+                    String fileName = fileNames[random.nextInt(fileNames.length)];
+                    locking.run(fileName, random.nextInt(writeEvery) == 0, nodeCall);
+                    completed.increment();
+                }
+            }, "bench-client-" + t);
+            client.setDaemon(true);
+            clients.add(client);
+            client.start();
+        }
+
+        started.await();
+        long begin = System.nanoTime();
+        long before = completed.sum();
+        Thread.sleep(stepMs);
+        long ops = completed.sum() - before;
+        double elapsedSeconds = (System.nanoTime() - begin) / 1e9;
+        running.set(false);
+        for (Thread client : clients) {
+            client.join();
+        }
+        return ops / elapsedSeconds;
+    }
+}
@@ -0,0 +1,94 @@
+package coordinator;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.regex.Pattern;
+
+// Basename -> full paths. Exact lookups hit the hash map; prefix and glob searches walk the sorted set
+// from the pattern's literal prefix instead of scanning the whole namespace.
+public class NameIndex {
+
+    private final Map<String, Set<String>> byBaseName = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<String> baseNames = new ConcurrentSkipListSet<>();
+
+    public synchronized void add(String fileName) {
+        String baseName = baseNameOf(fileName);
+        byBaseName.computeIfAbsent(baseName, b -> ConcurrentHashMap.newKeySet()).add(fileName);
+        baseNames.add(baseName);
+    }
+
+    public synchronized void remove(String fileName) {
+        String baseName = baseNameOf(fileName);
+        Set<String> paths = byBaseName.get(baseName);
+        if (paths == null) return;
+        paths.remove(fileName);
+        if (paths.isEmpty()) {
+            byBaseName.remove(baseName);
+            baseNames.remove(baseName);
+        }
+    }
+
+    public Set<String> lookup(String baseName) {
+        Set<String> paths = byBaseName.get(baseName);
+        return paths == null ? Collections.emptySet() : new TreeSet<>(paths);
+    }
+
+    // Glob over basenames: '*' matches any run of characters, '?' exactly one.
+    // At most `limit` paths, with or without a wildcard: one basename may be shared by any number of paths.
+    public List<String> search(String glob, int limit) {
+        List<String> matches = new ArrayList<>();
+        int wildcard = firstWildcard(glob);
+        if (wildcard < 0) {
+            addUpTo(matches, glob, limit);
+            return matches;
+        }
+
+        String prefix = glob.substring(0, wildcard);
+        Pattern pattern = compile(glob);
+        for (String baseName : baseNames.tailSet(prefix)) {
+            if (!baseName.startsWith(prefix) || matches.size() >= limit) break;
+            if (pattern.matcher(baseName).matches()) addUpTo(matches, baseName, limit);
+        }
+        return matches;
+    }
+
+    private void addUpTo(List<String> matches, String baseName, int limit) {
+        for (String fileName : lookup(baseName)) {
+            if (matches.size() >= limit) break;
+            matches.add(fileName);
+        }
+    }
+
+    public int size() {
+        return baseNames.size();
+    }
+
+    static String baseNameOf(String fileName) {
+        return fileName.substring(fileName.lastIndexOf('/') + 1);
+    }
+
+    private static int firstWildcard(String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') return i;
+        }
+        return -1;
+    }
+
+    private static Pattern compile(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) regex.append(Pattern.quote(literal.toString()));
+                literal.setLength(0);
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) regex.append(Pattern.quote(literal.toString()));
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+}
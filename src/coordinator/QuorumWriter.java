@@ -0,0 +1,163 @@
+package coordinator;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class QuorumWriter {
+
+    public interface ReplicaCall {
+        void apply(String nodeName) throws Exception;
+    }
+
+    // Applies a group of items to one node and returns the items that succeeded there.
+    public interface BatchCall {
+        Collection<String> apply(String nodeName, List<String> items) throws Exception;
+    }
+
+    public static class Result {
+        private final List<String> acked;
+        private final boolean quorumReached;
+        private final CompletableFuture<List<String>> lateAcks;
+
+        Result(List<String> acked, boolean quorumReached, CompletableFuture<List<String>> lateAcks) {
+            this.acked = acked;
+            this.quorumReached = quorumReached;
+            this.lateAcks = lateAcks;
+        }
+
+        public List<String> getAcked() {
+            return acked;
+        }
+
+        public boolean isQuorumReached() {
+            return quorumReached;
+        }
+
+        public CompletableFuture<List<String>> getLateAcks() {
+            return lateAcks;
+        }
+    }
+
+    public static class BatchResult {
+        private final Map<String, List<String>> acked;
+        private final int quorum;
+        private final CompletableFuture<Map<String, List<String>>> lateAcks;
+
+        BatchResult(Map<String, List<String>> acked, int quorum, CompletableFuture<Map<String, List<String>>> lateAcks) {
+            this.acked = acked;
+            this.quorum = quorum;
+            this.lateAcks = lateAcks;
+        }
+
+        public List<String> getAcked(String item) {
+            return acked.getOrDefault(item, Collections.emptyList());
+        }
+
+        public boolean isQuorumReached(String item) {
+            return getAcked(item).size() >= quorum;
+        }
+
+        public CompletableFuture<Map<String, List<String>>> getLateAcks() {
+            return lateAcks;
+        }
+    }
+
+    private final ExecutorService pool;
+    private final long timeoutMs;
+
+    public QuorumWriter(ExecutorService pool, long timeoutMs) {
+        this.pool = pool;
+        this.timeoutMs = timeoutMs;
+    }
+
+    public Result write(List<String> targets, int quorum, ReplicaCall call) {
+        String item = "";
+        BatchResult batch = writeBatch(Collections.singletonMap(item, targets), quorum, (nodeName, items) -> {
+            call.apply(nodeName);
+            return items;
+        });
+        return new Result(batch.getAcked(item), batch.isQuorumReached(item),
+                batch.getLateAcks().thenApply(late -> late.getOrDefault(item, Collections.emptyList())));
+    }
+
+    // Each node gets a single call covering all of its items; returns once every item has
+    // reached its quorum or heard back from all of its targets.
+    public BatchResult writeBatch(Map<String, List<String>> targetsByItem, int quorum, BatchCall call) {
+        Map<String, List<String>> itemsByNode = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> entry : targetsByItem.entrySet()) {
+            for (String nodeName : entry.getValue()) {
+                itemsByNode.computeIfAbsent(nodeName, n -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+
+        Map<String, List<String>> succeeded = new HashMap<>();
+        Map<String, Integer> finished = new HashMap<>();
+        Set<String> resolved = new HashSet<>();
+        CountDownLatch released = new CountDownLatch(1);
+        List<CompletableFuture<Void>> calls = new ArrayList<>();
+
+        synchronized (succeeded) {
+            for (Map.Entry<String, List<String>> entry : targetsByItem.entrySet()) {
+                if (entry.getValue().isEmpty()) resolved.add(entry.getKey());
+            }
+            if (resolved.size() == targetsByItem.size()) released.countDown();
+        }
+
+        for (Map.Entry<String, List<String>> group : itemsByNode.entrySet()) {
+            String nodeName = group.getKey();
+            List<String> items = group.getValue();
+            calls.add(CompletableFuture.runAsync(() -> {
+                Collection<String> ok;
+                try {
+                    ok = call.apply(nodeName, items);
+                } catch (Exception e) {
+                    System.err.println("[QuorumWriter] Replica " + nodeName + " failed: " + e.getMessage());
+                    ok = Collections.emptyList();
+                }
+                synchronized (succeeded) {
+                    for (String item : items) {
+                        if (ok.contains(item)) {
+                            succeeded.computeIfAbsent(item, i -> new ArrayList<>()).add(nodeName);
+                        }
+                        int done = finished.merge(item, 1, Integer::sum);
+                        int acks = succeeded.getOrDefault(item, Collections.emptyList()).size();
+                        if (acks >= quorum || done == targetsByItem.get(item).size()) {
+                            resolved.add(item);
+                        }
+                    }
+                    if (resolved.size() == targetsByItem.size()) released.countDown();
+                }
+            }, pool));
+        }
+
+        try {
+            released.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Map<String, List<String>> acked = new HashMap<>();
+        synchronized (succeeded) {
+            for (Map.Entry<String, List<String>> entry : succeeded.entrySet()) {
+                acked.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            }
+        }
+        CompletableFuture<Map<String, List<String>>> lateAcks = CompletableFuture
+                .allOf(calls.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> {
+                    Map<String, List<String>> late = new HashMap<>();
+                    synchronized (succeeded) {
+                        for (Map.Entry<String, List<String>> entry : succeeded.entrySet()) {
+                            List<String> nodes = new ArrayList<>(entry.getValue());
+                            nodes.removeAll(acked.getOrDefault(entry.getKey(), Collections.emptyList()));
+                            if (!nodes.isEmpty()) late.put(entry.getKey(), nodes);
+                        }
+                    }
+                    return late;
+                });
+        return new BatchResult(acked, quorum, lateAcks);
+    }
+}
@@ -0,0 +1,248 @@
+package coordinator;
+
+import rmi.FileService;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+// Triggered passes only look at files on ring arcs whose owners changed since the last pass, plus files queued
+// for repair; a full catalog pass runs every repairIntervalMs to catch replicas lost any other way.
+public class Rebalancer {
+
+    private static final long DEBOUNCE_MS = 2000;
+
+    private final FileCatalog catalog;
+    private final HashRing ring;
+    private final FileLocks fileLocks;
+    private final Map<String, FileService> nodes;
+    private final Predicate<String> isAlive;
+    private final int replicationFactor;
+    private final long bytesPerSecond;
+    private final int chunkSize;
+    private final long repairIntervalMs;
+    private final Semaphore trigger = new Semaphore(0);
+    private final Set<String> repairs = ConcurrentHashMap.newKeySet();
+    private NavigableMap<Long, String> balancedRing;
+    private long nextFullPassAt;
+
+    public Rebalancer(FileCatalog catalog, HashRing ring, FileLocks fileLocks, Map<String, FileService> nodes,
+                      Predicate<String> isAlive, int replicationFactor, long bytesPerSecond, int chunkSize,
+                      long repairIntervalMs) {
+        this.catalog = catalog;
+        this.ring = ring;
+        this.fileLocks = fileLocks;
+        this.nodes = nodes;
+        this.isAlive = isAlive;
+        this.replicationFactor = replicationFactor;
+        this.bytesPerSecond = bytesPerSecond;
+        this.chunkSize = chunkSize;
+        this.repairIntervalMs = repairIntervalMs;
+    }
+
+    public void start() {
+        Thread worker = new Thread(() -> {
+            while (true) {
+                try {
+                    if (trigger.tryAcquire(Math.max(1, nextFullPassAt - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                        // Let a burst of membership changes settle into a single pass.
+                        Thread.sleep(DEBOUNCE_MS);
+                        trigger.drainPermits();
+                    }
+                    rebalance();
+                } catch (InterruptedException e) {
+                    break;
+                } catch (Exception e) {
+                    System.err.println("[Rebalancer] Pass failed: " + e.getMessage());
+                }
+            }
+        }, "rebalancer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void requestRebalance() {
+        trigger.release();
+    }
+
+    // For a file whose replica list was cut outside a ring change.
+    public void repair(String fileName) {
+        repairs.add(fileName);
+        trigger.release();
+    }
+
+    private void rebalance() throws InterruptedException {
+        NavigableMap<Long, String> liveRing = new TreeMap<>();
+        for (Map.Entry<Long, String> vnode : ring.snapshot().entrySet()) {
+            if (isAlive.test(vnode.getValue())) liveRing.put(vnode.getKey(), vnode.getValue());
+        }
+
+        Map<String, FileCatalog.Entry> candidates = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        if (balancedRing == null || now >= nextFullPassAt) {
+            for (FileCatalog.Entry entry : catalog.entries()) {
+                candidates.put(entry.getFileName(), entry);
+            }
+            nextFullPassAt = now + repairIntervalMs;
+        } else {
+            List<long[]> arcs = movedArcs(balancedRing, liveRing);
+            for (long[] arc : arcs) {
+                for (FileCatalog.Entry entry : catalog.inRange(arc[0], arc[1])) {
+                    candidates.put(entry.getFileName(), entry);
+                }
+            }
+            if (!arcs.isEmpty()) {
+                System.out.println("[Rebalancer] Ring changed on " + arcs.size() + " arc(s), checking " + candidates.size() + " file(s).");
+            }
+        }
+        balancedRing = liveRing;
+
+        for (Iterator<String> queued = repairs.iterator(); queued.hasNext(); ) {
+            String fileName = queued.next();
+            queued.remove();
+            FileCatalog.Entry entry = catalog.get(fileName);
+            if (entry != null) candidates.putIfAbsent(fileName, entry);
+        }
+        rebalance(candidates.values());
+    }
+
+    // Arcs (from, to] of the ring whose owner lists differ between the two rings. Every key on such an arc
+    // is owned by the nodes found clockwise from its end, in both rings, because no vnode of either lies inside.
+    private List<long[]> movedArcs(NavigableMap<Long, String> before, NavigableMap<Long, String> after) {
+        List<long[]> arcs = new ArrayList<>();
+        TreeSet<Long> positions = new TreeSet<>(before.keySet());
+        positions.addAll(after.keySet());
+        if (positions.isEmpty()) return arcs;
+
+        long from = positions.last();
+        for (long to : positions) {
+            List<String> was = HashRing.owners(before, to, replicationFactor, n -> true);
+            List<String> is = HashRing.owners(after, to, replicationFactor, n -> true);
+            if (!new HashSet<>(was).equals(new HashSet<>(is))) {
+                arcs.add(new long[]{from, to});
+            }
+            from = to;
+        }
+        return arcs;
+    }
+
+    private void rebalance(Collection<FileCatalog.Entry> candidates) throws InterruptedException {
+        int copied = 0;
+        int dropped = 0;
+        long bytes = 0;
+
+        for (FileCatalog.Entry snapshot : candidates) {
+            String fileName = snapshot.getFileName();
+            List<String> owners = ring.owners(fileName, replicationFactor, isAlive);
+            if (owners.isEmpty() || snapshot.getReplicas().containsAll(owners) && snapshot.getReplicas().size() <= owners.size()) {
+                continue;
+            }
+
+            long fileBytes = 0;
+            // Exclusive: the copies are recorded and extra replicas deleted from the catalog and their nodes.
+            FileLocks.Handle lock = fileLocks.write(fileName);
+            try {
+                FileCatalog.Entry entry = catalog.get(fileName);
+                if (entry == null) continue;
+
+                List<String> missing = new ArrayList<>(owners);
+                missing.removeAll(entry.getReplicas());
+                // Small files are read once and fanned out; large ones stream chunk by chunk per target.
+                byte[] data = missing.isEmpty() || entry.getSize() > chunkSize ? null : readFromReplica(entry);
+                for (String nodeName : missing) {
+                    try {
+                        if (data != null) {
+                            nodes.get(nodeName).writeFile(fileName, data);
+                        } else if (!streamToNode(entry, nodeName)) {
+                            continue;
+                        }
+                        catalog.addReplica(fileName, nodeName, entry.getVersion(), System.currentTimeMillis());
+                        copied++;
+                        fileBytes += entry.getSize();
+                    } catch (Exception e) {
+                        System.err.println("[Rebalancer] Failed to copy " + fileName + " to " + nodeName + ": " + e.getMessage());
+                    }
+                }
+                dropped += dropExtraReplicas(fileName, owners);
+            } finally {
+                lock.release();
+            }
+            bytes += fileBytes;
+            throttle(fileBytes);
+        }
+
+        if (copied > 0 || dropped > 0) {
+            System.out.println("[Rebalancer] Moved " + copied + " replica(s) (" + bytes + " bytes), dropped " + dropped + " extra replica(s).");
+        }
+    }
+
+    // Only trims extra copies once every owner holds the current version.
+    private int dropExtraReplicas(String fileName, List<String> owners) {
+        FileCatalog.Entry current = catalog.get(fileName);
+        if (current == null || owners.size() < replicationFactor || !current.getReplicas().containsAll(owners)) {
+            return 0;
+        }
+
+        int dropped = 0;
+        for (String nodeName : current.getReplicas()) {
+            if (owners.contains(nodeName) || !isAlive.test(nodeName)) continue;
+            try {
+                catalog.removeReplica(fileName, nodeName);
+                nodes.get(nodeName).deleteFile(fileName);
+                dropped++;
+            } catch (Exception e) {
+                System.err.println("[Rebalancer] Failed to drop " + fileName + " from " + nodeName + ": " + e.getMessage());
+            }
+        }
+        return dropped;
+    }
+
+    private byte[] readFromReplica(FileCatalog.Entry entry) {
+        for (String nodeName : entry.getReplicas()) {
+            FileService node = nodes.get(nodeName);
+            if (node == null || !isAlive.test(nodeName)) continue;
+            try {
+                return node.readFile(entry.getFileName());
+            } catch (Exception e) {
+                continue;
+            }
+        }
+        return null;
+    }
+
+    private boolean streamToNode(FileCatalog.Entry entry, String targetName) throws Exception {
+        if (entry.getSize() <= chunkSize) return false;
+        String sourceName = null;
+        for (String nodeName : entry.getReplicas()) {
+            if (nodes.get(nodeName) != null && isAlive.test(nodeName)) {
+                sourceName = nodeName;
+                break;
+            }
+        }
+        if (sourceName == null) return false;
+
+        FileService source = nodes.get(sourceName);
+        FileService target = nodes.get(targetName);
+        String handle = target.openWrite(entry.getFileName());
+        try {
+            for (long offset = 0; offset < entry.getSize(); ) {
+                byte[] chunk = source.readRange(entry.getFileName(), offset, chunkSize);
+                if (chunk.length == 0) throw new IllegalStateException("Source replica " + sourceName + " is shorter than expected.");
+                target.writeChunk(handle, offset, chunk);
+                offset += chunk.length;
+            }
+            target.commitWrite(handle);
+            return true;
+        } catch (Exception e) {
+            target.abortWrite(handle);
+            throw e;
+        }
+    }
+
+    private void throttle(long bytes) throws InterruptedException {
+        if (bytesPerSecond <= 0) return;
+        TimeUnit.MILLISECONDS.sleep(bytes * 1000 / bytesPerSecond);
+    }
+}
@@ -0,0 +1,92 @@
+package coordinator;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ReplicaSelector {
+
+    private static final double ALPHA = 0.2;
+    private static final double INITIAL_LATENCY_MS = 1.0;
+    private static final double FAILURE_PENALTY_MS = 1000.0;
+    // Old samples fade so a node that recovered is not punished forever.
+    private static final long DECAY_HALF_LIFE_MS = 30000;
+
+    private static class NodeStats {
+        final AtomicInteger outstanding = new AtomicInteger();
+        final AtomicLong requests = new AtomicLong();
+        double ewmaMs = INITIAL_LATENCY_MS;
+        long updatedAt = System.currentTimeMillis();
+
+        synchronized void record(double latencyMs) {
+            ewmaMs = ALPHA * latencyMs + (1 - ALPHA) * decayed(System.currentTimeMillis());
+            updatedAt = System.currentTimeMillis();
+        }
+
+        synchronized double latency() {
+            return decayed(System.currentTimeMillis());
+        }
+
+        private double decayed(long now) {
+            double weight = Math.pow(0.5, (now - updatedAt) / (double) DECAY_HALF_LIFE_MS);
+            return INITIAL_LATENCY_MS + (ewmaMs - INITIAL_LATENCY_MS) * weight;
+        }
+
+        double score() {
+            return latency() * (outstanding.get() + 1);
+        }
+    }
+
+    private final Map<String, NodeStats> stats = new ConcurrentHashMap<>();
+
+    // Power of two choices: sample two candidates and keep the one with the lower score.
+    public String pick(List<String> candidates) {
+        if (candidates.isEmpty()) return null;
+        if (candidates.size() == 1) return candidates.get(0);
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) second++;
+
+        String a = candidates.get(first);
+        String b = candidates.get(second);
+        return statsFor(a).score() <= statsFor(b).score() ? a : b;
+    }
+
+    // Full preference order for callers that fail over: the pick first, the rest by score.
+    public List<String> order(List<String> candidates) {
+        List<String> ordered = new ArrayList<>(candidates);
+        String first = pick(candidates);
+        ordered.remove(first);
+        ordered.sort(Comparator.comparingDouble(n -> statsFor(n).score()));
+        if (first != null) ordered.add(0, first);
+        return ordered;
+    }
+
+    public long begin(String nodeName) {
+        NodeStats s = statsFor(nodeName);
+        s.outstanding.incrementAndGet();
+        s.requests.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void end(String nodeName, long startedAt, boolean success) {
+        NodeStats s = statsFor(nodeName);
+        s.outstanding.decrementAndGet();
+        double latencyMs = (System.nanoTime() - startedAt) / 1_000_000.0;
+        s.record(success ? latencyMs : Math.max(latencyMs, FAILURE_PENALTY_MS));
+    }
+
+    public String describe(String nodeName) {
+        NodeStats s = stats.get(nodeName);
+        if (s == null) return "no reads";
+        return String.format("ewma=%.1fms, outstanding=%d, reads=%d", s.latency(), s.outstanding.get(), s.requests.get());
+    }
+
+    private NodeStats statsFor(String nodeName) {
+        return stats.computeIfAbsent(nodeName, n -> new NodeStats());
+    }
+}
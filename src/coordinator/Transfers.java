@@ -0,0 +1,103 @@
+package coordinator;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Open chunked transfers; a handle is only usable with the session token that opened it.
+public class Transfers {
+
+    public static class Transfer {
+        private final String handle;
+        private final String token;
+        private final String fileName;
+        private final long version;
+        private final Map<String, String> nodeHandles;
+        private final AtomicLong size = new AtomicLong();
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        Transfer(String handle, String token, String fileName, long version, Map<String, String> nodeHandles) {
+            this.handle = handle;
+            this.token = token;
+            this.fileName = fileName;
+            this.version = version;
+            this.nodeHandles = nodeHandles;
+        }
+
+        public String getHandle() {
+            return handle;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public boolean isWrite() {
+            return nodeHandles != null;
+        }
+
+        // Node name to that node's upload handle, for writes only.
+        public Map<String, String> getNodeHandles() {
+            return nodeHandles;
+        }
+
+        public long getSize() {
+            return size.get();
+        }
+
+        void extendTo(long end) {
+            size.accumulateAndGet(end, Math::max);
+        }
+    }
+
+    private final long idleTimeoutMs;
+    private final Map<String, Transfer> transfers = new ConcurrentHashMap<>();
+
+    public Transfers(long idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    public Transfer openRead(String token, String fileName, long version) {
+        return register(new Transfer(UUID.randomUUID().toString(), token, fileName, version, null));
+    }
+
+    public Transfer openWrite(String token, String fileName, Map<String, String> nodeHandles) {
+        return register(new Transfer(UUID.randomUUID().toString(), token, fileName, -1, new ConcurrentHashMap<>(nodeHandles)));
+    }
+
+    public Transfer get(String token, String handle) {
+        Transfer transfer = transfers.get(handle);
+        if (transfer == null || !transfer.token.equals(token)) return null;
+        transfer.lastAccess = System.currentTimeMillis();
+        return transfer;
+    }
+
+    public Transfer remove(String token, String handle) {
+        Transfer transfer = get(token, handle);
+        return transfer != null && transfers.remove(handle, transfer) ? transfer : null;
+    }
+
+    public List<Transfer> expireIdle() {
+        long now = System.currentTimeMillis();
+        List<Transfer> expired = new ArrayList<>();
+        for (Transfer transfer : transfers.values()) {
+            if (now - transfer.lastAccess > idleTimeoutMs && transfers.remove(transfer.handle, transfer)) {
+                expired.add(transfer);
+            }
+        }
+        return expired;
+    }
+
+    public int size() {
+        return transfers.size();
+    }
+
+    private Transfer register(Transfer transfer) {
+        transfers.put(transfer.handle, transfer);
+        return transfer;
+    }
+}
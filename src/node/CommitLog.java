@@ -0,0 +1,209 @@
+package node;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+// Write-ahead log behind GroupCommit. The committer stages the full contents of every write in a batch,
+// appends them in one go and forces the log once, so a single fsync covers the data of the whole batch.
+// The targets themselves are only forced at a checkpoint, after which the log starts over; records still
+// in the log after a crash are written back on startup. Only the committer thread stages and syncs.
+public class CommitLog {
+
+    public static final String FILE_NAME = ".group-commit.log";
+
+    private static final byte DATA = 1;
+    // The target was forced or removed outside the log; earlier contents must not be replayed over it.
+    private static final byte SETTLED = 2;
+
+    private static final class Staged {
+        final byte type;
+        final Path target;
+
+        Staged(byte type, Path target) {
+            this.type = type;
+            this.target = target;
+        }
+    }
+
+    private final Path baseDirectory;
+    private final Path file;
+    private final List<ByteBuffer> buffers = new ArrayList<>();
+    private final List<Staged> staged = new ArrayList<>();
+    // Targets whose latest contents are only durable through the log.
+    private final Set<Path> logged = ConcurrentHashMap.newKeySet();
+    private FileChannel channel;
+    // Set when a failed batch could not be cut back off the log; later records would sit behind a torn one
+    // that replay stops at, so nothing more is accepted.
+    private IOException broken;
+
+    public CommitLog(Path baseDirectory) {
+        this.baseDirectory = baseDirectory;
+        this.file = baseDirectory.resolve(FILE_NAME);
+    }
+
+    // Opens the log and returns the last logged contents of every target it still covers, in log order.
+    // A torn or corrupt tail ends the replay: those records were never acknowledged. The caller writes the
+    // contents back durably and then resets the log before anything new is appended.
+    public Map<Path, byte[]> open() throws IOException {
+        Map<Path, byte[]> replay = new LinkedHashMap<>();
+        if (Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                while (true) {
+                    byte type;
+                    try {
+                        type = in.readByte();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    Record record = Record.read(type, in, Files.size(file));
+                    if (record == null) break;
+                    Path target = baseDirectory.resolve(record.path);
+                    replay.remove(target);
+                    if (record.type == DATA) replay.put(target, record.data);
+                }
+            }
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return replay;
+    }
+
+    public boolean holds(Path target) {
+        return logged.contains(target);
+    }
+
+    public void stageData(Path target, byte[] data) {
+        stage(DATA, target, data);
+    }
+
+    public void stageSettled(Path target) {
+        stage(SETTLED, target, new byte[0]);
+    }
+
+    // Appends everything staged since the last call and forces the log once. A batch that fails is cut back
+    // off the log, so the records of later batches still follow a complete one.
+    public void sync() throws IOException {
+        if (staged.isEmpty()) return;
+        long start = channel.position();
+        try {
+            if (broken != null) throw new IOException("Commit log unusable after an earlier failure", broken);
+            ByteBuffer[] batch = buffers.toArray(new ByteBuffer[0]);
+            long remaining = 0;
+            for (ByteBuffer buffer : batch) remaining += buffer.remaining();
+            while (remaining > 0) {
+                remaining -= channel.write(batch);
+            }
+            channel.force(false);
+            for (Staged record : staged) {
+                if (record.type == DATA) {
+                    logged.add(record.target);
+                } else {
+                    logged.remove(record.target);
+                }
+            }
+        } catch (IOException e) {
+            if (broken == null) truncate(start, e);
+            throw e;
+        } finally {
+            buffers.clear();
+            staged.clear();
+        }
+    }
+
+    // Drops whatever was staged for a batch that failed before it reached sync().
+    public void discardStaged() {
+        buffers.clear();
+        staged.clear();
+    }
+
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    public Set<Path> targets() {
+        return new HashSet<>(logged);
+    }
+
+    private void truncate(long start, IOException cause) {
+        try {
+            channel.truncate(start);
+            channel.position(start);
+        } catch (IOException e) {
+            e.addSuppressed(cause);
+            broken = e;
+            System.err.println("[CommitLog] Cannot cut a failed batch off " + file + ", refusing further commits: " + e.getMessage());
+        }
+    }
+
+    // Caller has made every logged target durable on its own.
+    public void reset() throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(false);
+        logged.clear();
+        broken = null;
+    }
+
+    private void stage(byte type, Path target, byte[] data) {
+        byte[] path = baseDirectory.relativize(target).toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(1 + 4 + path.length + 4);
+        header.put(type).putInt(path.length).put(path).putInt(data.length).flip();
+        CRC32 crc = new CRC32();
+        crc.update(header.duplicate());
+        crc.update(data);
+        ByteBuffer trailer = ByteBuffer.allocate(8);
+        trailer.putLong(crc.getValue()).flip();
+        buffers.add(header);
+        buffers.add(ByteBuffer.wrap(data));
+        buffers.add(trailer);
+        staged.add(new Staged(type, target));
+    }
+
+    private static final class Record {
+        final byte type;
+        final String path;
+        final byte[] data;
+
+        Record(byte type, String path, byte[] data) {
+            this.type = type;
+            this.path = path;
+            this.data = data;
+        }
+
+        // Null when the record is incomplete or its checksum does not match.
+        static Record read(byte type, DataInputStream in, long logSize) throws IOException {
+            try {
+                if (type != DATA && type != SETTLED) return null;
+                int pathLength = in.readInt();
+                if (pathLength < 0 || pathLength > 4096) return null;
+                byte[] path = new byte[pathLength];
+                in.readFully(path);
+                int dataLength = in.readInt();
+                if (dataLength < 0 || dataLength > logSize) return null;
+                byte[] data = new byte[dataLength];
+                in.readFully(data);
+                long expected = in.readLong();
+
+                CRC32 crc = new CRC32();
+                ByteArrayOutputStream header = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(header);
+                out.writeByte(type);
+                out.writeInt(pathLength);
+                out.write(path);
+                out.writeInt(dataLength);
+                crc.update(header.toByteArray());
+                crc.update(data);
+                if (crc.getValue() != expected) return null;
+                return new Record(type, new String(path, StandardCharsets.UTF_8), data);
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+    }
+}
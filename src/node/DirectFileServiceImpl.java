@@ -0,0 +1,63 @@
+package node;
+
+import rmi.AccessTicket;
+import rmi.DirectFileService;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+
+// Separate remote object for the ticketed calls. An RMI stub exposes every remote interface of the object
+// it points at, so the coordinator-only FileService must live behind a different object than this one.
+public class DirectFileServiceImpl extends UnicastRemoteObject implements DirectFileService {
+    private static final long serialVersionUID = 1L;
+
+    private final FileServiceImpl files;
+
+    public DirectFileServiceImpl(FileServiceImpl files) throws RemoteException {
+        super();
+        this.files = files;
+    }
+
+    @Override
+    public byte[] readFile(AccessTicket ticket) throws RemoteException {
+        return files.readFile(ticket);
+    }
+
+    @Override
+    public byte[] readRange(AccessTicket ticket, long offset, int length) throws RemoteException {
+        return files.readRange(ticket, offset, length);
+    }
+
+    @Override
+    public void writeFile(AccessTicket ticket, byte[] data) throws RemoteException {
+        files.writeFile(ticket, data);
+    }
+
+    @Override
+    public String openWrite(AccessTicket ticket) throws RemoteException {
+        return files.openWrite(ticket);
+    }
+
+    @Override
+    public void writeChunk(String handle, long offset, byte[] data) throws RemoteException {
+        files.requireTicketedUpload(handle);
+        files.writeChunk(handle, offset, data);
+    }
+
+    @Override
+    public void commitWrite(String handle) throws RemoteException {
+        files.requireTicketedUpload(handle);
+        files.commitWrite(handle);
+    }
+
+    @Override
+    public void abortWrite(String handle) throws RemoteException {
+        files.requireTicketedUpload(handle);
+        files.abortWrite(handle);
+    }
+
+    @Override
+    public String getNodeName() throws RemoteException {
+        return files.getNodeName();
+    }
+}
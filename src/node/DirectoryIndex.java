@@ -0,0 +1,165 @@
+package node;
+
+import rmi.FileInfo;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+// Sorted "section/name" -> size/mtime view of the storage directory. Built once at startup, updated by the
+// service on its own writes and kept honest about out-of-band changes by a WatchService.
+public class DirectoryIndex {
+
+    private static final int MAX_PAGE = 10000;
+
+    private final Path baseDirectory;
+    private final ConcurrentSkipListMap<String, FileInfo> entries = new ConcurrentSkipListMap<>();
+    private WatchService watcher;
+
+    public DirectoryIndex(Path baseDirectory) {
+        this.baseDirectory = baseDirectory;
+    }
+
+    public void start() throws IOException {
+        watcher = baseDirectory.getFileSystem().newWatchService();
+        baseDirectory.register(watcher, ENTRY_CREATE, ENTRY_DELETE);
+        try (DirectoryStream<Path> sections = Files.newDirectoryStream(baseDirectory)) {
+            for (Path section : sections) {
+                if (Files.isDirectory(section)) section.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            }
+        }
+        // Scan after registering so nothing created in between is missed.
+        rebuild();
+
+        Thread thread = new Thread(this::watch, "index-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void rebuild() {
+        ConcurrentSkipListMap<String, FileInfo> scanned = new ConcurrentSkipListMap<>();
+        try (DirectoryStream<Path> sections = Files.newDirectoryStream(baseDirectory)) {
+            for (Path section : sections) {
+                if (!Files.isDirectory(section)) continue;
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(section)) {
+                    for (Path file : files) {
+                        FileInfo info = stat(file);
+                        if (info != null) scanned.put(info.getName(), info);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("[DirectoryIndex] Scan of " + baseDirectory + " failed: " + e.getMessage());
+            return;
+        }
+        entries.keySet().retainAll(scanned.keySet());
+        entries.putAll(scanned);
+    }
+
+    public void refresh(Path file) {
+        String name = nameOf(file);
+        FileInfo info = stat(file);
+        if (info == null) {
+            entries.remove(name);
+        } else {
+            entries.put(name, info);
+        }
+    }
+
+    public void remove(Path file) {
+        entries.remove(nameOf(file));
+    }
+
+    public FileInfo get(String name) {
+        return entries.get(name);
+    }
+
+    public List<String> names() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    public List<FileInfo> infos() {
+        return new ArrayList<>(entries.values());
+    }
+
+    // Names are sorted; a page resumes strictly after startAfter and stays within the prefix.
+    public List<FileInfo> page(String prefix, String startAfter, int limit) {
+        String from = prefix == null ? "" : prefix;
+        boolean inclusive = true;
+        if (startAfter != null && startAfter.compareTo(from) >= 0) {
+            from = startAfter;
+            inclusive = false;
+        }
+
+        List<FileInfo> page = new ArrayList<>();
+        int max = Math.min(Math.max(limit, 0), MAX_PAGE);
+        for (Map.Entry<String, FileInfo> entry : entries.tailMap(from, inclusive).entrySet()) {
+            if (page.size() >= max || prefix != null && !entry.getKey().startsWith(prefix)) break;
+            page.add(entry.getValue());
+        }
+        return page;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    rebuild();
+                    continue;
+                }
+                Path child = dir.resolve((Path) event.context());
+                if (dir.equals(baseDirectory)) {
+                    onSectionEvent(child, event.kind());
+                } else if (!Uploads.isPartFile(child)) {
+                    refresh(child);
+                }
+            }
+            if (!key.reset() && !dir.equals(baseDirectory)) {
+                entries.subMap(dir.getFileName() + "/", dir.getFileName() + "0").clear();
+            }
+        }
+    }
+
+    private void onSectionEvent(Path section, WatchEvent.Kind<?> kind) {
+        if (kind == ENTRY_CREATE && Files.isDirectory(section)) {
+            try {
+                section.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            } catch (IOException e) {
+                System.err.println("[DirectoryIndex] Cannot watch " + section + ": " + e.getMessage());
+            }
+            rebuild();
+        }
+    }
+
+    private FileInfo stat(Path file) {
+        if (Uploads.isPartFile(file)) return null;
+        try {
+            if (!Files.isRegularFile(file)) return null;
+            return new FileInfo(nameOf(file), Files.size(file), Files.getLastModifiedTime(file).toMillis());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private String nameOf(Path file) {
+        Path relative = baseDirectory.relativize(file);
+        return relative.getName(0) + "/" + relative.getFileName();
+    }
+}
@@ -1,20 +1,68 @@
 package node;
+import auth.TicketSigner;
+import cache.ContentCache;
+import rmi.AccessTicket;
+import rmi.CacheStats;
+import rmi.FileInfo;
+import rmi.FileResult;
 import rmi.FileService;
+import rmi.NodeStats;
+import rmi.PatchOp;
 import java.io.*;
 import java.nio.file.*;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class FileServiceImpl extends UnicastRemoteObject implements FileService {
+    private static final long serialVersionUID = 1L;
+
+    private static class AppliedGrant {
+        final long grantId;
+        final long expiresAt;
+        // False once a write outside the grant order replaced the contents this grant produced.
+        final boolean current;
+
+        AppliedGrant(long grantId, long expiresAt, boolean current) {
+            this.grantId = grantId;
+            this.expiresAt = expiresAt;
+            this.current = current;
+        }
+    }
 
     private final String nodeName;
     private final Path baseDirectory;
+    private final DirectoryIndex index;
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicLong totalRequests = new AtomicLong();
+    private final PathLocks pathLocks = new PathLocks(Integer.getInteger("node.lockStripes", 256));
+    private final ReadPath readPath = new ReadPath(Integer.getInteger("node.smallFileBytes", 64 * 1024),
+            Long.getLong("node.mmapCacheBytes", 256L * 1024 * 1024));
+    private final GroupCommit groupCommit;
+    private final Uploads uploads;
+    private final TicketSigner tickets = TicketSigner.fromSystemProperties();
+    // Newest write grant applied per file, so a slow client cannot overwrite a newer direct write. An entry
+    // is only needed while an older ticket could still be presented, so it goes once its own ticket expired.
+    private final Map<Path, AppliedGrant> appliedGrants = new ConcurrentHashMap<>();
+    private final long grantSweepMs = Long.getLong("node.grantSweepMs", 60 * 1000);
+    private final AtomicLong nextGrantSweep = new AtomicLong();
+    // Whole-file contents keyed by path and versioned by the index's mtime; null when the node runs without one.
+    private final ContentCache<Path> contentCache;
 
     public FileServiceImpl(String nodeName, String baseDirectoryPath) throws RemoteException {
+        this(nodeName, baseDirectoryPath, 0);
+    }
+
+    public FileServiceImpl(String nodeName, String baseDirectoryPath, long cacheBytes) throws RemoteException {
         super();
         this.nodeName = nodeName;
+        this.contentCache = cacheBytes > 0 ? new ContentCache<>(cacheBytes, 10000) : null;
         this.baseDirectory = Paths.get(baseDirectoryPath);
         if (!Files.exists(baseDirectory)) {
             try {
@@ -25,82 +73,401 @@ public class FileServiceImpl extends UnicastRemoteObject implements FileService
             }
         }
         createSectionFolders();
+        this.groupCommit = new GroupCommit(baseDirectory, Long.getLong("node.groupCommitMs", 1),
+                Integer.getInteger("node.groupCommitMaxBatch", 256), Long.getLong("node.commitLogBytes", 64L * 1024 * 1024));
+        this.uploads = new Uploads(Long.getLong("node.uploadIdleMs", 10 * 60 * 1000), groupCommit);
+        try {
+            groupCommit.start();
+        } catch (IOException e) {
+            throw new RemoteException("[Node-" + nodeName + "] Cannot replay the commit log", e);
+        }
+
+        this.index = new DirectoryIndex(baseDirectory);
+        try {
+            index.start();
+        } catch (IOException e) {
+            System.err.println("[Node-" + nodeName + "] File watching unavailable, index only follows service writes: " + e.getMessage());
+            index.rebuild();
+        }
+        System.out.println("[Node-" + nodeName + "] Indexed " + index.size() + " file(s).");
     }
 
     @Override
     public List<String> listFiles() throws RemoteException {
-        List<String> files = new ArrayList<>();
-        try (DirectoryStream<Path> sectionDirs = Files.newDirectoryStream(baseDirectory)) {
-            for (Path sectionPath : sectionDirs) {
-                if (Files.isDirectory(sectionPath)) {
-                    String section = sectionPath.getFileName().toString();
-                    try (DirectoryStream<Path> fileStream = Files.newDirectoryStream(sectionPath)) {
-                        for (Path file : fileStream) {
-                            if (Files.isRegularFile(file)) {
-                                files.add(section + "/" + file.getFileName().toString());
-                            }
-                        }
-                    }
-                }
-            }
+        return index.names();
+    }
+
+    @Override
+    public List<FileInfo> listFileInfo() throws RemoteException {
+        return index.infos();
+    }
+
+    @Override
+    public List<FileInfo> listFilesPage(String startAfter, int limit) throws RemoteException {
+        return index.page(null, startAfter, limit);
+    }
+
+    @Override
+    public List<FileInfo> listFilesByPrefix(String prefix, String startAfter, int limit) throws RemoteException {
+        return index.page(prefix, startAfter, limit);
+    }
+
+    @Override
+    public byte[] readFile(String fileName) throws RemoteException {
+        Path filePath = resolveSectionPath(fileName);
+        beginRequest();
+        PathLocks.Handle lock = pathLocks.read(filePath);
+        try {
+            return readCached(fileName, filePath);
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new RemoteException("Error reading file: " + fileName, e);
+        } finally {
+            activeRequests.decrementAndGet();
+            lock.release();
         }
-        return files;
     }
 
+    @Override
+    public void writeFile(String fileName, byte[] data) throws RemoteException {
+        Path filePath = resolveSectionPath(fileName);
+        beginRequest();
+        PathLocks.Handle lock = pathLocks.write(filePath);
+        try {
+            invalidate(filePath);
+            supersedeGrant(filePath);
+            groupCommit.write(filePath, data);
+        } catch (IOException e) {
+            throw new RemoteException("Error writing file: " + fileName, e);
+        } finally {
+            index.refresh(filePath);
+            activeRequests.decrementAndGet();
+            lock.release();
+        }
+    }
 
     @Override
-    public byte[] readFile(String fileName) throws RemoteException {
+    public void deleteFile(String fileName) throws RemoteException {
         Path filePath = resolveSectionPath(fileName);
-        synchronized (filePath.toString().intern()) {
+        beginRequest();
+        PathLocks.Handle lock = pathLocks.write(filePath);
+        try {
+            invalidate(filePath);
+            supersedeGrant(filePath);
+            Files.deleteIfExists(filePath);
+            index.remove(filePath);
+            groupCommit.settle(filePath);
+        } catch (IOException e) {
+            throw new RemoteException("Error deleting file: " + fileName, e);
+        } finally {
+            activeRequests.decrementAndGet();
+            lock.release();
+        }
+    }
+
+    @Override
+    public boolean fileExists(String fileName) throws RemoteException {
+        Path filePath = resolveSectionPath(fileName);
+        PathLocks.Handle lock = pathLocks.read(filePath);
+        try {
+            return Files.exists(filePath);
+        } finally {
+            lock.release();
+        }
+    }
+
+
+
+    @Override
+    public List<FileResult> readFiles(List<String> fileNames) throws RemoteException {
+        List<FileResult> results = new ArrayList<>();
+        for (String fileName : fileNames) {
             try {
-                return Files.readAllBytes(filePath);
-            } catch (IOException e) {
-                throw new RemoteException("Error reading file: " + fileName, e);
+                results.add(FileResult.ok(fileName, readFile(fileName)));
+            } catch (RemoteException e) {
+                results.add(FileResult.failed(fileName, e.getMessage()));
             }
         }
+        return results;
     }
 
     @Override
-    public void writeFile(String fileName, byte[] data) throws RemoteException {
-        Path filePath = resolveSectionPath(fileName);
-        synchronized (filePath.toString().intern()) {
+    public List<FileResult> writeFiles(Map<String, byte[]> files) throws RemoteException {
+        List<FileResult> results = new ArrayList<>();
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
             try {
-                Files.write(filePath, data);
-            } catch (IOException e) {
-                throw new RemoteException("Error writing file: " + fileName, e);
+                writeFile(file.getKey(), file.getValue());
+                results.add(FileResult.ok(file.getKey()));
+            } catch (RemoteException e) {
+                results.add(FileResult.failed(file.getKey(), e.getMessage()));
             }
         }
+        return results;
     }
 
     @Override
-    public void deleteFile(String fileName) throws RemoteException {
+    public List<FileResult> deleteFiles(List<String> fileNames) throws RemoteException {
+        List<FileResult> results = new ArrayList<>();
+        for (String fileName : fileNames) {
+            try {
+                deleteFile(fileName);
+                results.add(FileResult.ok(fileName));
+            } catch (RemoteException e) {
+                results.add(FileResult.failed(fileName, e.getMessage()));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public byte[] readRange(String fileName, long offset, int length) throws RemoteException {
         Path filePath = resolveSectionPath(fileName);
-        synchronized (filePath.toString().intern()) {
+        if (offset < 0 || length < 0) throw new RemoteException("Invalid range: " + offset + "+" + length);
+        beginRequest();
+        PathLocks.Handle lock = pathLocks.read(filePath);
+        try {
+            return readPath.readRange(filePath, offset, length);
+        } catch (IOException e) {
+            throw new RemoteException("Error reading file: " + fileName, e);
+        } finally {
+            activeRequests.decrementAndGet();
+            lock.release();
+        }
+    }
+
+    @Override
+    public String openWrite(String fileName) throws RemoteException {
+        Path filePath = resolveSectionPath(fileName);
+        try {
+            return uploads.open(filePath);
+        } catch (IOException e) {
+            throw new RemoteException("Error opening upload: " + fileName, e);
+        }
+    }
+
+    @Override
+    public void writeChunk(String handle, long offset, byte[] data) throws RemoteException {
+        beginRequest();
+        try {
+            uploads.write(handle, offset, data);
+        } catch (IOException e) {
+            throw new RemoteException("Error writing chunk: " + e.getMessage(), e);
+        } finally {
+            activeRequests.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void commitWrite(String handle) throws RemoteException {
+        beginRequest();
+        try {
+            Path filePath = uploads.targetOf(handle);
+            long grantId = uploads.grantOf(handle);
+            long grantExpiresAt = uploads.grantExpiryOf(handle);
+            PathLocks.Handle lock = pathLocks.write(filePath);
             try {
-                Files.deleteIfExists(filePath);
-            } catch (IOException e) {
-                throw new RemoteException("Error deleting file: " + fileName, e);
+                if (grantId >= 0) {
+                    checkGrantOrder(filePath, grantId, grantExpiresAt);
+                } else {
+                    supersedeGrant(filePath);
+                }
+                invalidate(filePath);
+                uploads.commit(handle);
+            } finally {
+                index.refresh(filePath);
+                lock.release();
             }
+        } catch (RemoteException e) {
+            uploads.abort(handle);
+            throw e;
+        } catch (IOException e) {
+            throw new RemoteException("Error committing upload: " + e.getMessage(), e);
+        } finally {
+            activeRequests.decrementAndGet();
         }
     }
 
     @Override
-    public boolean fileExists(String fileName) throws RemoteException {
+    public void abortWrite(String handle) throws RemoteException {
+        uploads.abort(handle);
+    }
+
+    @Override
+    public long applyPatch(String fileName, long baseSize, long baseModified, List<PatchOp> ops) throws RemoteException {
         Path filePath = resolveSectionPath(fileName);
-        synchronized (filePath.toString().intern()) {
-            return Files.exists(filePath);
+        beginRequest();
+        PathLocks.Handle lock = pathLocks.write(filePath);
+        try {
+            // The coordinator checked this copy against the catalog version; it must not have changed since.
+            if (Files.size(filePath) != baseSize || Files.getLastModifiedTime(filePath).toMillis() != baseModified) {
+                throw new RemoteException("Stale base for " + fileName + " on " + nodeName);
+            }
+            invalidate(filePath);
+            supersedeGrant(filePath);
+            return LinePatcher.apply(filePath, ops, groupCommit);
+        } catch (IOException e) {
+            throw new RemoteException("Error patching file: " + fileName + " (" + e.getMessage() + ")", e);
+        } finally {
+            index.refresh(filePath);
+            activeRequests.decrementAndGet();
+            lock.release();
         }
     }
 
+    @Override
+    public FileInfo statFile(String fileName) throws RemoteException {
+        Path filePath = resolveSectionPath(fileName);
+        PathLocks.Handle lock = pathLocks.read(filePath);
+        try {
+            if (!Files.isRegularFile(filePath)) return null;
+            return new FileInfo(fileName, Files.size(filePath), Files.getLastModifiedTime(filePath).toMillis());
+        } catch (IOException e) {
+            throw new RemoteException("Error reading file info: " + fileName, e);
+        } finally {
+            lock.release();
+        }
+    }
 
+    @Override
+    public long appliedGrant(String fileName) throws RemoteException {
+        Path filePath = resolveSectionPath(fileName);
+        PathLocks.Handle lock = pathLocks.read(filePath);
+        try {
+            AppliedGrant applied = appliedGrants.get(filePath);
+            return applied != null && applied.current ? applied.grantId : -1;
+        } finally {
+            lock.release();
+        }
+    }
+
+    byte[] readFile(AccessTicket ticket) throws RemoteException {
+        requireTicket(ticket, AccessTicket.Operation.READ);
+        return readFile(ticket.getFileName());
+    }
+
+    byte[] readRange(AccessTicket ticket, long offset, int length) throws RemoteException {
+        requireTicket(ticket, AccessTicket.Operation.READ);
+        return readRange(ticket.getFileName(), offset, length);
+    }
+
+    void writeFile(AccessTicket ticket, byte[] data) throws RemoteException {
+        requireTicket(ticket, AccessTicket.Operation.WRITE);
+        Path filePath = resolveSectionPath(ticket.getFileName());
+        PathLocks.Handle lock = pathLocks.write(filePath);
+        try {
+            checkGrantOrder(filePath, ticket.getGrantId(), ticket.getExpiresAt());
+            beginRequest();
+            try {
+                invalidate(filePath);
+                groupCommit.write(filePath, data);
+            } catch (IOException e) {
+                throw new RemoteException("Error writing file: " + ticket.getFileName(), e);
+            } finally {
+                index.refresh(filePath);
+                activeRequests.decrementAndGet();
+            }
+        } finally {
+            lock.release();
+        }
+    }
+
+    String openWrite(AccessTicket ticket) throws RemoteException {
+        requireTicket(ticket, AccessTicket.Operation.WRITE);
+        Path filePath = resolveSectionPath(ticket.getFileName());
+        try {
+            return uploads.open(filePath, ticket.getGrantId(), ticket.getExpiresAt());
+        } catch (IOException e) {
+            throw new RemoteException("Error opening upload: " + ticket.getFileName(), e);
+        }
+    }
+
+    // Coordinator uploads are opened without a ticket and must not be reachable through DirectFileService.
+    void requireTicketedUpload(String handle) throws RemoteException {
+        try {
+            if (uploads.grantOf(handle) < 0) throw new RemoteException("Access denied: upload was not opened with a ticket.");
+        } catch (IOException e) {
+            throw new RemoteException(e.getMessage(), e);
+        }
+    }
+
+    private void requireTicket(AccessTicket ticket, AccessTicket.Operation operation) throws RemoteException {
+        if (!tickets.verify(ticket, operation, nodeName)) {
+            throw new RemoteException("Access denied: invalid or expired ticket.");
+        }
+    }
+
+    // Caller holds the file's lock.
+    private void checkGrantOrder(Path filePath, long grantId, long expiresAt) throws RemoteException {
+        AppliedGrant applied = appliedGrants.get(filePath);
+        if (applied != null && applied.grantId > grantId) {
+            throw new RemoteException("Write grant superseded by a newer write.");
+        }
+        appliedGrants.put(filePath, new AppliedGrant(grantId, expiresAt, true));
+        sweepExpiredGrants();
+    }
+
+    // Caller holds the file's lock. A coordinator write keeps the grant order but no longer carries the
+    // grant's contents, so a direct write confirmed afterwards is not certified on this copy.
+    private void supersedeGrant(Path filePath) {
+        appliedGrants.computeIfPresent(filePath, (path, applied) ->
+                applied.current ? new AppliedGrant(applied.grantId, applied.expiresAt, false) : applied);
+    }
+
+    // Tickets share one TTL, so an older grant expires no later than the newest one applied: once that has
+    // passed, only an upload opened earlier can still commit, and those paths are kept until it does.
+    private void sweepExpiredGrants() {
+        long now = System.currentTimeMillis();
+        long due = nextGrantSweep.get();
+        if (now < due || !nextGrantSweep.compareAndSet(due, now + grantSweepMs)) return;
+        Set<Path> uploading = uploads.ticketedTargets();
+        appliedGrants.entrySet().removeIf(e -> e.getValue().expiresAt < now && !uploading.contains(e.getKey()));
+    }
+
+    // Caller holds the file's read lock, so no writer can replace the file between the lookup and the put.
+    private byte[] readCached(String fileName, Path filePath) throws IOException {
+        FileInfo info = contentCache == null ? null : index.get(fileName);
+        if (info == null) return readPath.read(filePath);
+
+        byte[] data = contentCache.get(filePath, info.getLastModified());
+        if (data == null) {
+            data = readPath.read(filePath);
+            if (data.length == info.getSize()) contentCache.put(filePath, info.getLastModified(), data);
+        }
+        return data;
+    }
+
+    // Caller holds the file's write lock.
+    private void invalidate(Path filePath) {
+        readPath.invalidate(filePath);
+        if (contentCache != null) contentCache.invalidate(filePath);
+    }
+
+    @Override
+    public CacheStats getCacheStats() throws RemoteException {
+        if (contentCache == null) return new CacheStats(0, 0, 0, 0, 0, 0);
+        return new CacheStats(contentCache.getHits(), contentCache.getMisses(), contentCache.getEvictions(),
+                contentCache.getBytes(), contentCache.getMaxBytes(), contentCache.getEntries());
+    }
 
     @Override
     public String getNodeName() throws RemoteException {
         return nodeName;
     }
 
+    public NodeStats getStats() {
+        long usableSpace;
+        try {
+            usableSpace = Files.getFileStore(baseDirectory).getUsableSpace();
+        } catch (IOException e) {
+            usableSpace = -1;
+        }
+        return new NodeStats(activeRequests.get(), totalRequests.get(), usableSpace, System.currentTimeMillis());
+    }
+
+    private void beginRequest() {
+        activeRequests.incrementAndGet();
+        totalRequests.incrementAndGet();
+    }
+
     private void createSectionFolders() {
         String[] sections = {"qa", "dev", "design"};
         for (String section : sections) {
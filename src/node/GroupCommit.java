@@ -0,0 +1,275 @@
+package node;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Durable replace-by-rename. Writers fill their own hidden part file without forcing it, then queue it; a
+// single committer appends the batch's contents to the CommitLog and forces that once, renames the batch
+// and fsyncs each touched directory once before releasing the writers. So a batch costs one data fsync
+// plus one per directory, not one per writer. The targets are forced at a checkpoint when the log grows
+// past its limit. The committer lingers only while other writers are still filling their part files, so
+// a lone writer never pays for the window.
+public class GroupCommit {
+
+    private static final class Pending {
+        final Path part;
+        final Path target;
+        // Contents to log, or null when the part file was forced by its writer or there is no part at all.
+        final byte[] data;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(Path part, Path target, byte[] data) {
+            this.part = part;
+            this.target = target;
+            this.data = data;
+        }
+    }
+
+    private final long lingerNanos;
+    private final int maxBatch;
+    private final CommitLog log;
+    private final long checkpointBytes;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger writers = new AtomicInteger();
+    private volatile boolean directorySyncSupported = true;
+    // Why the committer stopped, once it has; writers then fail at once instead of waiting on a dead queue.
+    private volatile Throwable stopped;
+
+    public GroupCommit(Path baseDirectory, long lingerMs, int maxBatch, long checkpointBytes) {
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.maxBatch = maxBatch;
+        this.log = new CommitLog(baseDirectory);
+        this.checkpointBytes = checkpointBytes;
+    }
+
+    // Writes back whatever the log still holds from before a crash, then starts the committer.
+    public void start() throws IOException {
+        Map<Path, byte[]> replay = log.open();
+        for (Map.Entry<Path, byte[]> entry : replay.entrySet()) {
+            Path target = entry.getKey();
+            Path part = target.resolveSibling(Uploads.PART_PREFIX + target.getFileName() + ".replay" + Uploads.PART_SUFFIX);
+            Files.createDirectories(target.getParent());
+            try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(entry.getValue());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory(target.getParent());
+        }
+        log.reset();
+        if (!replay.isEmpty()) System.out.println("[GroupCommit] Restored " + replay.size() + " logged write(s).");
+
+        Thread thread = new Thread(this::run, "group-commit");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Caller holds the target's write lock until this returns.
+    public void write(Path target, byte[] data) throws IOException {
+        writers.incrementAndGet();
+        try {
+            writePart(target, data);
+        } finally {
+            writers.decrementAndGet();
+        }
+    }
+
+    private void writePart(Path target, byte[] data) throws IOException {
+        Path part = target.resolveSibling(Uploads.PART_PREFIX + target.getFileName() + "." + UUID.randomUUID() + Uploads.PART_SUFFIX);
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+        awaitCommit(new Pending(part, target, data));
+    }
+
+    // The part file must already be forced; returns once the rename is durable. When this throws, the target
+    // may or may not have been replaced, so callers re-read its state either way.
+    public void commit(Path part, Path target) throws IOException {
+        writers.incrementAndGet();
+        try {
+            awaitCommit(new Pending(part, target, null));
+        } finally {
+            writers.decrementAndGet();
+        }
+    }
+
+    // For a target changed outside write() and commit(): a delete, or an in-place change its writer forced.
+    // Caller holds the target's write lock. Returns once a replay can no longer bring back older logged
+    // contents; free when the current log holds nothing for the target.
+    public void settle(Path target) throws IOException {
+        if (log.holds(target)) awaitCommit(new Pending(null, target, null));
+    }
+
+    private void awaitCommit(Pending pending) throws IOException {
+        Path target = pending.target;
+        queue.add(pending);
+        // Checked after queueing: either the committer drains this entry on its way out, or we see it stopped.
+        if (stopped != null) pending.done.completeExceptionally(new IOException("Group commit stopped", stopped));
+        try {
+            pending.done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for commit of " + target);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Commit of " + target + " failed", e.getCause());
+        }
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatch && writers.get() > batch.size()) {
+                    long wait = deadline - System.nanoTime();
+                    Pending next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                stop(batch, new IOException("Group commit stopped"));
+                return;
+            }
+            try {
+                flush(batch);
+                checkpoint();
+            } catch (RuntimeException e) {
+                // Anything flush did not settle fails with the batch; the committer carries on with the next one.
+                log.discardStaged();
+                System.err.println("[GroupCommit] Batch failed: " + e);
+                for (Pending pending : batch) {
+                    pending.done.completeExceptionally(new IOException("Group commit failed", e));
+                }
+            } catch (Throwable e) {
+                stop(batch, e);
+                throw e;
+            }
+            batch.clear();
+        }
+    }
+
+    private void stop(List<Pending> batch, Throwable cause) {
+        stopped = cause;
+        System.err.println("[GroupCommit] Committer stopped, failing all pending writes: " + cause);
+        IOException failure = new IOException("Group commit stopped", cause);
+        queue.drainTo(batch);
+        for (Pending pending : batch) {
+            pending.done.completeExceptionally(failure);
+        }
+    }
+
+    // Every path gets its own outcome: a failed rename fails only that writer, and a failed directory sync
+    // fails only the writers whose target lives in that directory.
+    private void flush(List<Pending> batch) {
+        for (Pending pending : batch) {
+            if (pending.data != null) {
+                log.stageData(pending.target, pending.data);
+            } else if (log.holds(pending.target)) {
+                log.stageSettled(pending.target);
+            }
+        }
+        try {
+            log.sync();
+        } catch (IOException e) {
+            for (Pending pending : batch) {
+                if (pending.part != null) discard(pending.part);
+                pending.done.completeExceptionally(e);
+            }
+            return;
+        }
+
+        List<Pending> renamed = new ArrayList<>();
+        for (Pending pending : batch) {
+            if (pending.part == null) {
+                pending.done.complete(null);
+                continue;
+            }
+            try {
+                Files.move(pending.part, pending.target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                renamed.add(pending);
+            } catch (IOException e) {
+                discard(pending.part);
+                pending.done.completeExceptionally(e);
+            }
+        }
+
+        Map<Path, IOException> synced = new HashMap<>();
+        for (Pending pending : renamed) {
+            Path directory = pending.target.getParent();
+            if (!synced.containsKey(directory)) {
+                IOException failure = null;
+                try {
+                    syncDirectory(directory);
+                } catch (IOException e) {
+                    failure = e;
+                }
+                synced.put(directory, failure);
+            }
+            IOException failure = synced.get(directory);
+            if (failure != null) {
+                pending.done.completeExceptionally(new IOException("Renamed " + pending.target
+                        + " but could not make the rename durable: " + failure.getMessage(), failure));
+            } else {
+                pending.done.complete(null);
+            }
+        }
+    }
+
+    // Forces every target the log still covers so the log can start over. Runs on the committer between
+    // batches, so no rename races it; a failed checkpoint leaves the log in place and is retried later.
+    private void checkpoint() {
+        try {
+            if (log.size() < checkpointBytes) return;
+            for (Path target : log.targets()) {
+                try (FileChannel channel = FileChannel.open(target, StandardOpenOption.READ)) {
+                    channel.force(true);
+                } catch (NoSuchFileException e) {
+                    // Deleted since; nothing left to make durable.
+                }
+            }
+            log.reset();
+        } catch (IOException e) {
+            System.err.println("[GroupCommit] Checkpoint failed, keeping the log: " + e.getMessage());
+        }
+    }
+
+    // Makes the renames themselves durable. Platforms that cannot open a directory for sync skip this step.
+    private void syncDirectory(Path directory) throws IOException {
+        if (!directorySyncSupported) return;
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException | UnsupportedOperationException e) {
+            directorySyncSupported = false;
+            System.err.println("[GroupCommit] Directory sync unsupported here, renames rely on the filesystem: " + e);
+        }
+    }
+
+    private static void discard(Path part) {
+        try {
+            Files.deleteIfExists(part);
+        } catch (IOException e) {
+            System.err.println("[GroupCommit] Failed to discard " + part + ": " + e.getMessage());
+        }
+    }
+}
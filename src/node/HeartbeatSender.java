@@ -0,0 +1,56 @@
+package node;
+
+import rmi.CoordinatorService;
+
+import java.rmi.Naming;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class HeartbeatSender {
+
+    private final String nodeName;
+    private final FileServiceImpl service;
+    private final DirectFileServiceImpl directService;
+    private final String coordinatorUrl;
+    private final long intervalMs;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "heartbeat-sender");
+        t.setDaemon(true);
+        return t;
+    });
+    private CoordinatorService coordinator;
+
+    public HeartbeatSender(String nodeName, FileServiceImpl service, DirectFileServiceImpl directService,
+                           String coordinatorUrl, long intervalMs) {
+        this.nodeName = nodeName;
+        this.service = service;
+        this.directService = directService;
+        this.coordinatorUrl = coordinatorUrl;
+        this.intervalMs = intervalMs;
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::beat, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void beat() {
+        try {
+            if (coordinator == null) {
+                coordinator = (CoordinatorService) Naming.lookup(coordinatorUrl);
+                coordinator.registerNode(nodeName, service, directService);
+                System.out.println("[Node-" + nodeName + "] Registered with Coordinator.");
+                return;
+            }
+            if (!coordinator.heartbeat(nodeName, service.getStats())) {
+                coordinator.registerNode(nodeName, service, directService);
+                System.out.println("[Node-" + nodeName + "] Coordinator did not know this node, re-registered.");
+            }
+        } catch (Exception e) {
+            if (coordinator != null) {
+                System.err.println("[Node-" + nodeName + "] Lost contact with Coordinator: " + e.getMessage());
+            }
+            coordinator = null;
+        }
+    }
+}
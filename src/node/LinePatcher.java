@@ -0,0 +1,265 @@
+package node;
+
+import rmi.PatchOp;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+
+// Applies line patches without loading the file: appends go straight to the end, other edits copy the
+// untouched prefix with transferTo and stream the rest through the ops into a part file that replaces it.
+public class LinePatcher {
+
+    private static final class Segment {
+        final long start;
+        final long end;
+        final byte[] text;
+
+        Segment(long start, long end) {
+            this.start = start;
+            this.end = end;
+            this.text = null;
+        }
+
+        Segment(byte[] text) {
+            this.start = -1;
+            this.end = -1;
+            this.text = text;
+        }
+
+        long length() {
+            return text != null ? 1 : end - start;
+        }
+    }
+
+    private LinePatcher() {
+    }
+
+    // Caller holds the file's lock. Returns the new file size.
+    public static long apply(Path file, List<PatchOp> ops, GroupCommit groupCommit) throws IOException {
+        boolean appendOnly = true;
+        for (PatchOp op : ops) {
+            if (op.getType() != PatchOp.Type.APPEND) appendOnly = false;
+        }
+        if (!appendOnly) return rewrite(file, ops, groupCommit);
+        long size = appendInPlace(file, ops);
+        // The append forced the whole file, so older logged contents must not be replayed over it.
+        groupCommit.settle(file);
+        return size;
+    }
+
+    private static long appendInPlace(Path file, List<PatchOp> ops) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            boolean trailingNewline = size > 0 && lastByte(channel) == '\n';
+            boolean empty = size == 0;
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (PatchOp op : ops) {
+                if (!empty && !trailingNewline) out.write('\n');
+                out.write(op.getText().getBytes(StandardCharsets.UTF_8));
+                if (trailingNewline) out.write('\n');
+                empty = false;
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+            long position = size;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            channel.force(true);
+            return position;
+        }
+    }
+
+    private static long rewrite(Path file, List<PatchOp> ops, GroupCommit groupCommit) throws IOException {
+        long size = Files.size(file);
+        long lineCount = 0;
+        boolean trailingNewline = false;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            int b;
+            int last = -1;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') lineCount++;
+                last = b;
+            }
+            if (last != -1 && last != '\n') lineCount++;
+            trailingNewline = last == '\n';
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        if (lineCount > 0) segments.add(new Segment(0, lineCount));
+        for (PatchOp op : ops) {
+            applyOp(segments, op);
+        }
+
+        // Leading segments that still hold base lines 0..n in order are copied verbatim.
+        long untouched = 0;
+        int firstChanged = 0;
+        while (firstChanged < segments.size()) {
+            Segment segment = segments.get(firstChanged);
+            if (segment.text != null || segment.start != untouched) break;
+            untouched = segment.end;
+            firstChanged++;
+        }
+
+        Path part = file.resolveSibling(Uploads.PART_PREFIX + file.getFileName() + ".patch" + Uploads.PART_SUFFIX);
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long prefixBytes = offsetOfLine(source, untouched, size);
+            boolean prefixEndsWithNewline = prefixBytes > 0 && byteAt(source, prefixBytes - 1) == '\n';
+            // Only trailing lines were deleted from a file without a final newline: the separator before them goes too.
+            if (firstChanged == segments.size() && prefixEndsWithNewline && !trailingNewline) {
+                prefixBytes--;
+                prefixEndsWithNewline = false;
+            }
+            for (long copied = 0; copied < prefixBytes; ) {
+                copied += source.transferTo(copied, prefixBytes - copied, target);
+            }
+
+            source.position(prefixBytes);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(source));
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(target));
+            LineWriter writer = new LineWriter(out, untouched, prefixEndsWithNewline);
+
+            long cursor = untouched;
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            for (int i = firstChanged; i < segments.size(); i++) {
+                Segment segment = segments.get(i);
+                if (segment.text != null) {
+                    writer.line(segment.text);
+                    continue;
+                }
+                for (; cursor < segment.start; cursor++) {
+                    readLine(in, line);
+                }
+                for (; cursor < segment.end; cursor++) {
+                    writer.line(readLine(in, line));
+                }
+            }
+            writer.finish(trailingNewline);
+            out.flush();
+            target.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+
+        // Same durable replace as full writes: the rename is only reported once its directory is synced.
+        groupCommit.commit(part, file);
+        return Files.size(file);
+    }
+
+    private static void applyOp(List<Segment> segments, PatchOp op) throws IOException {
+        long total = 0;
+        for (Segment segment : segments) total += segment.length();
+
+        switch (op.getType()) {
+            case APPEND:
+                segments.add(new Segment(text(op)));
+                break;
+            case INSERT:
+                checkLine(op, total + 1);
+                segments.add(splitAt(segments, op.getLine()), new Segment(text(op)));
+                break;
+            case DELETE:
+                checkLine(op, total);
+                splitAt(segments, op.getLine() + 1);
+                segments.remove(splitAt(segments, op.getLine()));
+                break;
+            case REPLACE:
+                checkLine(op, total);
+                splitAt(segments, op.getLine() + 1);
+                segments.set(splitAt(segments, op.getLine()), new Segment(text(op)));
+                break;
+        }
+    }
+
+    // Splits the segment covering line `at` so a segment starts exactly there; returns its index.
+    private static int splitAt(List<Segment> segments, long at) {
+        long position = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            if (position == at) return i;
+            long next = position + segment.length();
+            if (at < next) {
+                long split = segment.start + (at - position);
+                segments.set(i, new Segment(segment.start, split));
+                segments.add(i + 1, new Segment(split, segment.end));
+                return i + 1;
+            }
+            position = next;
+        }
+        return segments.size();
+    }
+
+    private static void checkLine(PatchOp op, long limit) throws IOException {
+        if (op.getLine() < 0 || op.getLine() >= limit) {
+            throw new IOException("Line " + (op.getLine() + 1) + " out of range for " + op.getType());
+        }
+    }
+
+    private static byte[] text(PatchOp op) {
+        return op.getText() == null ? new byte[0] : op.getText().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long offsetOfLine(FileChannel channel, long line, long size) throws IOException {
+        if (line == 0) return 0;
+        InputStream in = new BufferedInputStream(Channels.newInputStream(channel.position(0)));
+        long seen = 0;
+        long offset = 0;
+        int b;
+        while ((b = in.read()) != -1) {
+            offset++;
+            if (b == '\n' && ++seen == line) return offset;
+        }
+        return size;
+    }
+
+    private static byte[] readLine(InputStream in, ByteArrayOutputStream line) throws IOException {
+        line.reset();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        return line.toByteArray();
+    }
+
+    private static int lastByte(FileChannel channel) throws IOException {
+        return byteAt(channel, channel.size() - 1);
+    }
+
+    private static int byteAt(FileChannel channel, long position) throws IOException {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        return channel.read(one, position) == 1 ? one.get(0) : -1;
+    }
+
+    // Joins lines with '\n' and keeps the original file's trailing-newline style.
+    private static final class LineWriter {
+        private final OutputStream out;
+        private long written;
+        private boolean endsWithNewline;
+
+        LineWriter(OutputStream out, long prefixLines, boolean prefixEndsWithNewline) {
+            this.out = out;
+            this.written = prefixLines;
+            this.endsWithNewline = prefixEndsWithNewline;
+        }
+
+        void line(byte[] bytes) throws IOException {
+            if (written > 0 && !endsWithNewline) out.write('\n');
+            out.write(bytes);
+            endsWithNewline = false;
+            written++;
+        }
+
+        void finish(boolean trailingNewline) throws IOException {
+            if (written > 0 && trailingNewline && !endsWithNewline) out.write('\n');
+        }
+    }
+}
@@ -1,7 +1,5 @@
 package node;
 
-import rmi.CoordinatorService;
-
 import java.rmi.Naming;
 import java.rmi.registry.LocateRegistry;
 
@@ -9,7 +7,7 @@ public class Node {
 
     public static void main(String[] args) {
         if (args.length < 3) {
-            System.out.println("Usage: java Node <nodeName> <port> <storagePath>");
+            System.out.println("Usage: java Node <nodeName> <port> <storagePath> [cacheMB]");
             return;
         }
 
@@ -19,20 +17,25 @@ public class Node {
 
         String storagePath = args[2];
 
+        long cacheBytes = args.length > 3 ? Long.parseLong(args[3]) * 1024 * 1024 : 0;
+
 
         try {
             LocateRegistry.createRegistry(port);
             System.out.println("[Node-" + nodeName + "] RMI registry started on port " + port);
-            FileServiceImpl service = new FileServiceImpl(nodeName, storagePath);
+            FileServiceImpl service = new FileServiceImpl(nodeName, storagePath, cacheBytes);
+            DirectFileServiceImpl directService = new DirectFileServiceImpl(service);
+            if (cacheBytes > 0) System.out.println("[Node-" + nodeName + "] Content cache: " + args[3] + "MB");
+            // Only the ticketed service is published; the unticketed one goes straight to the coordinator.
             String serviceURL = "rmi://localhost:" + port + "/" + nodeName;
-            Naming.rebind(serviceURL, service);
-            System.out.println("[Node-" + nodeName + "] FileService bound at " + serviceURL);
-            CoordinatorService coordinator = (CoordinatorService) Naming.lookup("rmi://localhost:1099/Coordinator");
-            coordinator.registerNode(nodeName, service);
-            System.out.println("[Node-" + nodeName + "] Registered with Coordinator.");
+            Naming.rebind(serviceURL, directService);
+            System.out.println("[Node-" + nodeName + "] DirectFileService bound at " + serviceURL);
+            long heartbeatMs = Long.getLong("node.heartbeatMs", 2000);
+            new HeartbeatSender(nodeName, service, directService, "rmi://localhost:1099/Coordinator", heartbeatMs).start();
         } catch (Exception e) {
             System.err.println("[Node-" + nodeName + "] Error: " + e.getMessage());
             e.printStackTrace();
+            System.exit(1);
         }
     }
 }
\ No newline at end of file
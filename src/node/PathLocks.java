@@ -0,0 +1,53 @@
+package node;
+
+import java.nio.file.Path;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Fixed table of read/write locks picked by path hash: readers of a file run in parallel, memory stays
+// bounded however many paths are touched, and nothing outside this class can lock the same monitor.
+public class PathLocks {
+
+    private final ReentrantReadWriteLock[] stripes;
+    private final int mask;
+
+    public PathLocks(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new ReentrantReadWriteLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+        this.mask = size - 1;
+    }
+
+    public Handle read(Path path) {
+        return acquire(stripeFor(path).readLock());
+    }
+
+    public Handle write(Path path) {
+        return acquire(stripeFor(path).writeLock());
+    }
+
+    private ReentrantReadWriteLock stripeFor(Path path) {
+        int h = path.toString().hashCode();
+        return stripes[(h ^ (h >>> 16)) & mask];
+    }
+
+    private static Handle acquire(Lock lock) {
+        lock.lock();
+        return new Handle(lock);
+    }
+
+    // Released in a finally block right after the lock is taken, as with java.util.concurrent locks.
+    public static class Handle {
+        private final Lock lock;
+
+        private Handle(Lock lock) {
+            this.lock = lock;
+        }
+
+        public void release() {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package node;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Small files are read through a per-thread pooled buffer; larger ones are served from cached read-only
+// mappings so repeated reads of hot files are page-cache copies with no open/read syscalls.
+public class ReadPath {
+
+    private static final class Mapping {
+        final MappedByteBuffer buffer;
+        final long size;
+        final long modified;
+
+        Mapping(MappedByteBuffer buffer, long size, long modified) {
+            this.buffer = buffer;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    private final int smallFileBytes;
+    private final long maxMappedBytes;
+    private final ThreadLocal<ByteBuffer> pooled;
+    private final LinkedHashMap<Path, Mapping> mappings = new LinkedHashMap<>(16, 0.75f, true);
+    private long mappedBytes;
+
+    public ReadPath(int smallFileBytes, long maxMappedBytes) {
+        this.smallFileBytes = smallFileBytes;
+        this.maxMappedBytes = maxMappedBytes;
+        this.pooled = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(smallFileBytes));
+    }
+
+    // Caller holds the file's read lock.
+    public byte[] read(Path file) throws IOException {
+        return readRange(file, 0, Integer.MAX_VALUE);
+    }
+
+    // Caller holds the file's read lock.
+    public byte[] readRange(Path file, long offset, int length) throws IOException {
+        long size = Files.size(file);
+        int count = (int) Math.max(0, Math.min(length, size - offset));
+        if (count == 0) return new byte[0];
+
+        if (size <= smallFileBytes) return readPooled(file, offset, count);
+
+        Mapping mapping = mappingFor(file, size);
+        if (mapping == null) return readDirect(file, offset, count);
+
+        byte[] data = new byte[count];
+        mapping.buffer.duplicate().position((int) offset).get(data);
+        return data;
+    }
+
+    // Writers call this under the file's write lock so no reader sees a mapping of the replaced file.
+    public synchronized void invalidate(Path file) {
+        Mapping removed = mappings.remove(file);
+        if (removed != null) mappedBytes -= removed.size;
+    }
+
+    private byte[] readPooled(Path file, long offset, int count) throws IOException {
+        ByteBuffer buffer = pooled.get();
+        buffer.clear().limit(count);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) break;
+                position += read;
+            }
+        }
+        byte[] data = new byte[buffer.position()];
+        buffer.flip().get(data);
+        return data;
+    }
+
+    private byte[] readDirect(Path file, long offset, int count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(count);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) break;
+                position += read;
+            }
+        }
+        return buffer.position() == count ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    // Returns null for files a single mapping cannot cover or that would not fit the cache.
+    private Mapping mappingFor(Path file, long size) throws IOException {
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        synchronized (this) {
+            Mapping cached = mappings.get(file);
+            if (cached != null && cached.size == size && cached.modified == modified) return cached;
+        }
+        if (size > Integer.MAX_VALUE || size > maxMappedBytes) return null;
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        Mapping mapping = new Mapping(buffer, size, modified);
+
+        synchronized (this) {
+            Mapping previous = mappings.put(file, mapping);
+            if (previous != null) mappedBytes -= previous.size;
+            mappedBytes += size;
+            // Dropped mappings are unmapped by the GC once no reader holds them.
+            Iterator<Map.Entry<Path, Mapping>> it = mappings.entrySet().iterator();
+            while (mappedBytes > maxMappedBytes && it.hasNext()) {
+                Map.Entry<Path, Mapping> eldest = it.next();
+                if (eldest.getValue() == mapping) continue;
+                mappedBytes -= eldest.getValue().size;
+                it.remove();
+            }
+        }
+        return mapping;
+    }
+}
@@ -1,24 +1,53 @@
 package node;
 import rmi.CoordinatorService;
+import sync.SyncManifest;
+import sync.SyncProtocol;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.net.Socket;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
-import rmi.FileService;
+import java.util.Map;
+import java.util.Set;
+import rmi.DirectFileService;
 
 public class SyncClient {
 
-    private static final int PORT = 5000;
+    private static final int MAX_ATTEMPTS = 2;
+    // Kept in the node folder itself; the index and listings only look inside section directories.
+    private static final String MANIFEST_FILE = ".sync-manifest";
+
+    private static final class Outgoing {
+        final String section;
+        final File file;
+        int attempts;
+
+        Outgoing(String section, File file) {
+            this.section = section;
+            this.file = file;
+        }
+    }
 
     public static void syncFolder(String nodeFolder) {
         try {
             Registry registry = LocateRegistry.getRegistry("localhost", 1099);
             CoordinatorService coordinator = (CoordinatorService) registry.lookup("Coordinator");
 
-            List<FileService> healthyNodes = coordinator.getHealthyNodes();
+            List<DirectFileService> healthyNodes = coordinator.getHealthyNodes();
             if (healthyNodes.size() < 3) {
                 System.out.println("️ Sync aborted from [" + nodeFolder + "]: All 3 nodes must be ONLINE.");
                 return;
@@ -30,42 +59,176 @@ public class SyncClient {
                 return;
             }
 
-            for (File sectionDir : rootDir.listFiles()) {
-                if (sectionDir.isDirectory()) {
-                    String section = sectionDir.getName();
-
-                    for (File file : sectionDir.listFiles()) {
-                        if (file.isFile()) {
-                            sendFile(section, file);
-                        }
-                    }
-                }
+            Path root = rootDir.toPath();
+            Path manifestFile = root.resolve(MANIFEST_FILE);
+            SyncManifest previous;
+            try {
+                previous = SyncManifest.load(manifestFile);
+            } catch (IOException e) {
+                System.err.println("[SyncClient] Rehashing " + nodeFolder + ", manifest unreadable: " + e.getMessage());
+                previous = new SyncManifest();
             }
+            SyncManifest manifest = SyncManifest.scan(root, previous, Uploads::isPartFile);
+            manifest.save(manifestFile);
+
+            syncChanges(nodeFolder, root, manifest);
 
         } catch (Exception e) {
             System.err.println(" SyncClient error: " + e.getMessage());
         }
     }
 
-    private static void sendFile(String section, File file) {
-        try (Socket socket = new Socket("localhost", PORT);
-             DataOutputStream out = new DataOutputStream(socket.getOutputStream());
-             FileInputStream fis = new FileInputStream(file)) {
+    private static void syncChanges(String nodeFolder, Path root, SyncManifest manifest) throws IOException {
+        try (SocketChannel socket = SocketChannel.open(new InetSocketAddress("localhost", SyncProtocol.PORT))) {
+            SyncProtocol.writeHello(socket);
+
+            Deque<Outgoing> queue = new ArrayDeque<>();
+            for (String name : negotiate(socket, root.getFileName().toString(), manifest)) {
+                String section = SyncManifest.sectionOf(name);
+                queue.add(new Outgoing(section, root.resolve(name).toFile()));
+            }
+            if (queue.isEmpty()) {
+                System.out.println("[SyncClient] " + nodeFolder + ": up to date (" + manifest.size() + " file(s) checked).");
+                return;
+            }
+            sendAll(nodeFolder, socket, queue);
+        }
+    }
+
+    // Walks the server down the Merkle tree: section roots, then bucket hashes of differing sections, then the
+    // entries of differing buckets. The folder name identifies the node whose last known state the server
+    // compares against. Returns the names the server asked for.
+    private static List<String> negotiate(SocketChannel socket, String nodeName, SyncManifest manifest) throws IOException {
+        Set<String> sections = manifest.sections();
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(request);
+        out.writeUTF(nodeName);
+        out.writeInt(sections.size());
+        for (String section : sections) {
+            out.writeUTF(section);
+            out.write(manifest.root(section));
+        }
+        SyncProtocol.writeFrame(socket, SyncProtocol.SECTIONS, request.toByteArray());
+
+        DataInputStream in = SyncProtocol.expect(socket, SyncProtocol.DIFF_SECTIONS).getPayload();
+        List<String> differing = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            differing.add(in.readUTF());
+        }
+        if (differing.isEmpty()) return Collections.emptyList();
 
+        request.reset();
+        out.writeInt(differing.size());
+        for (String section : differing) {
             out.writeUTF(section);
-            out.writeUTF(file.getName());
-            out.writeLong(file.length());
+            for (byte[] bucket : manifest.buckets(section)) {
+                out.write(bucket);
+            }
+        }
+        SyncProtocol.writeFrame(socket, SyncProtocol.BUCKETS, request.toByteArray());
 
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            while ((bytesRead = fis.read(buffer)) > 0) {
-                out.write(buffer, 0, bytesRead);
+        in = SyncProtocol.expect(socket, SyncProtocol.DIFF_BUCKETS).getPayload();
+        List<Map.Entry<String, SyncManifest.Entry>> offered = new ArrayList<>();
+        for (int sectionCount = in.readInt(); sectionCount > 0; sectionCount--) {
+            String section = in.readUTF();
+            for (int bucketCount = in.readInt(); bucketCount > 0; bucketCount--) {
+                offered.addAll(manifest.bucket(section, in.readInt()).entrySet());
             }
+        }
 
-            System.out.println("[SyncClient] Sent: " + section + "/" + file.getName());
+        List<String> wanted = new ArrayList<>();
+        for (int from = 0; from < offered.size(); from += SyncProtocol.ENTRIES_PER_FRAME) {
+            List<Map.Entry<String, SyncManifest.Entry>> batch =
+                    offered.subList(from, Math.min(offered.size(), from + SyncProtocol.ENTRIES_PER_FRAME));
+            request.reset();
+            out.writeInt(batch.size());
+            for (Map.Entry<String, SyncManifest.Entry> entry : batch) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().getSize());
+                out.writeLong(entry.getValue().getLastModified());
+                out.write(entry.getValue().getHash());
+            }
+            SyncProtocol.writeFrame(socket, SyncProtocol.ENTRIES, request.toByteArray());
 
-        } catch (Exception e) {
-            System.err.println(" Failed to send file: " + file.getName() + " - " + e.getMessage());
+            in = SyncProtocol.expect(socket, SyncProtocol.WANT).getPayload();
+            for (int i = in.readInt(); i > 0; i--) {
+                wanted.add(in.readUTF());
+            }
+        }
+        return wanted;
+    }
+
+    // Frames are pipelined up to the protocol window over one connection; acks come back in batches.
+    private static void sendAll(String nodeFolder, SocketChannel socket, Deque<Outgoing> queue) throws IOException {
+        int sent = 0;
+        int failed = 0;
+        Map<Long, Outgoing> inFlight = new HashMap<>();
+        long seq = 0;
+        boolean flushRequested = false;
+        while (!queue.isEmpty() || !inFlight.isEmpty()) {
+            if (!queue.isEmpty() && inFlight.size() < SyncProtocol.WINDOW) {
+                Outgoing next = queue.poll();
+                next.attempts++;
+                if (sendFile(socket, ++seq, next)) {
+                    inFlight.put(seq, next);
+                    flushRequested = false;
+                } else {
+                    failed++;
+                }
+                continue;
+            }
+            if (queue.isEmpty() && !flushRequested) {
+                SyncProtocol.writeFrame(socket, SyncProtocol.FLUSH, new byte[0]);
+                flushRequested = true;
+            }
+
+            DataInputStream acks = SyncProtocol.expect(socket, SyncProtocol.ACK).getPayload();
+            for (int i = acks.readInt(); i > 0; i--) {
+                Outgoing done = inFlight.remove(acks.readLong());
+                byte status = acks.readByte();
+                if (done == null) continue;
+                String name = done.section + "/" + done.file.getName();
+                if (status == SyncProtocol.OK) {
+                    sent++;
+                    System.out.println("[SyncClient] Sent: " + name);
+                } else if (status == SyncProtocol.BAD_CHECKSUM && done.attempts < MAX_ATTEMPTS) {
+                    System.err.println("[SyncClient] Checksum mismatch, resending: " + name);
+                    queue.add(done);
+                } else {
+                    failed++;
+                    System.err.println(" Failed to send file: " + name + " (status " + status + ")");
+                }
+            }
+        }
+        System.out.println("[SyncClient] " + nodeFolder + ": " + sent + " changed file(s) sent, " + failed + " failed.");
+    }
+
+    // The body goes socket-ward with transferTo, so the kernel copies it straight from the page cache.
+    private static boolean sendFile(SocketChannel socket, long seq, Outgoing outgoing) throws IOException {
+        File file = outgoing.file;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(header);
+            out.writeLong(seq);
+            out.writeUTF(outgoing.section);
+            out.writeUTF(file.getName());
+            out.writeLong(size);
+            out.writeLong(file.lastModified());
+            out.writeLong(SyncProtocol.checksum(channel, size));
+
+            SyncProtocol.writeFrame(socket, SyncProtocol.FILE, header.toByteArray());
+            for (long sent = 0; sent < size; ) {
+                long n = channel.transferTo(sent, size - sent, socket);
+                // The frame already promised size bytes, so a shrinking file can only end the session.
+                if (n == 0 && channel.size() <= sent) throw new IOException(file.getName() + " shrank while being sent");
+                sent += n;
+            }
+            return true;
+        } catch (NoSuchFileException e) {
+            // Gone since the folder was scanned; nothing has been written for it yet.
+            System.err.println(" Failed to send file: " + file.getName() + " - no longer exists");
+            return false;
         }
     }
-}
\ No newline at end of file
+}
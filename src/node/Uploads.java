@@ -0,0 +1,141 @@
+package node;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Chunked writes land in a hidden part file next to the target and only replace it on commit.
+public class Uploads {
+
+    public static final String PART_PREFIX = ".";
+    public static final String PART_SUFFIX = ".part";
+
+    private static class Upload {
+        final Path target;
+        final Path part;
+        final FileChannel channel;
+        final long grantId;
+        final long grantExpiresAt;
+        volatile long lastAccess = System.currentTimeMillis();
+
+        Upload(Path target, Path part, FileChannel channel, long grantId, long grantExpiresAt) {
+            this.target = target;
+            this.part = part;
+            this.channel = channel;
+            this.grantId = grantId;
+            this.grantExpiresAt = grantExpiresAt;
+        }
+    }
+
+    private final long idleTimeoutMs;
+    private final GroupCommit groupCommit;
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+
+    public Uploads(long idleTimeoutMs, GroupCommit groupCommit) {
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.groupCommit = groupCommit;
+    }
+
+    public static boolean isPartFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(PART_PREFIX) && name.endsWith(PART_SUFFIX);
+    }
+
+    public String open(Path target) throws IOException {
+        return open(target, -1, 0);
+    }
+
+    public String open(Path target, long grantId, long grantExpiresAt) throws IOException {
+        expireIdle();
+        String handle = UUID.randomUUID().toString();
+        Path part = target.resolveSibling(PART_PREFIX + target.getFileName() + "." + handle + PART_SUFFIX);
+        FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        uploads.put(handle, new Upload(target, part, channel, grantId, grantExpiresAt));
+        return handle;
+    }
+
+    public void write(String handle, long offset, byte[] data) throws IOException {
+        Upload upload = require(handle);
+        upload.lastAccess = System.currentTimeMillis();
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            position += upload.channel.write(buffer, position);
+        }
+    }
+
+    // Caller holds the target's lock; the part file replaces the target in a single rename.
+    public void commit(String handle) throws IOException {
+        Upload upload = require(handle);
+        uploads.remove(handle);
+        try (FileChannel channel = upload.channel) {
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(upload.part);
+            throw e;
+        }
+        groupCommit.commit(upload.part, upload.target);
+    }
+
+    public Path targetOf(String handle) throws IOException {
+        return require(handle).target;
+    }
+
+    // Ticket grant the upload was opened with, or -1 for coordinator-driven uploads.
+    public long grantOf(String handle) throws IOException {
+        return require(handle).grantId;
+    }
+
+    // Expiry of the ticket the upload was opened with.
+    public long grantExpiryOf(String handle) throws IOException {
+        return require(handle).grantExpiresAt;
+    }
+
+    // Targets that still have a ticketed upload open; their grant order has to be kept until it commits.
+    public Set<Path> ticketedTargets() {
+        Set<Path> targets = new HashSet<>();
+        for (Upload upload : uploads.values()) {
+            if (upload.grantId >= 0) targets.add(upload.target);
+        }
+        return targets;
+    }
+
+    public void abort(String handle) {
+        Upload upload = uploads.remove(handle);
+        if (upload != null) discard(upload);
+    }
+
+    private void expireIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<Upload> it = uploads.values().iterator();
+        while (it.hasNext()) {
+            Upload upload = it.next();
+            if (now - upload.lastAccess > idleTimeoutMs) {
+                it.remove();
+                discard(upload);
+            }
+        }
+    }
+
+    private Upload require(String handle) throws IOException {
+        Upload upload = uploads.get(handle);
+        if (upload == null) throw new IOException("Unknown or expired upload: " + handle);
+        return upload;
+    }
+
+    private static void discard(Upload upload) {
+        try {
+            upload.channel.close();
+            Files.deleteIfExists(upload.part);
+        } catch (IOException e) {
+            System.err.println("[Uploads] Failed to discard " + upload.part + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package rmi;
+
+import java.io.Serializable;
+import java.util.List;
+
+// Where to go and what to show when going there: replicas in preference order plus the ticket.
+public class AccessGrant implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final AccessTicket ticket;
+    private final List<DirectFileService> nodes;
+    private final long size;
+    private final long version;
+    private final int chunkSize;
+
+    public AccessGrant(AccessTicket ticket, List<DirectFileService> nodes, long size, long version, int chunkSize) {
+        this.ticket = ticket;
+        this.nodes = nodes;
+        this.size = size;
+        this.version = version;
+        this.chunkSize = chunkSize;
+    }
+
+    public AccessTicket getTicket() {
+        return ticket;
+    }
+
+    // Same order as getTicket().getNodeNames().
+    public List<DirectFileService> getNodes() {
+        return nodes;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+}
@@ -0,0 +1,68 @@
+package rmi;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+// Short-lived grant for one file and one operation, signed by the coordinator and checked by nodes.
+public class AccessTicket implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Operation { READ, WRITE }
+
+    // The sync server has no user session. It signs a WRITE ticket under this name to prove it holds the
+    // secret, and the coordinator issues its write grants under the same name.
+    public static final String SYNC_USER = "sync-server";
+
+    private final long grantId;
+    private final String username;
+    private final String fileName;
+    private final Operation operation;
+    private final List<String> nodeNames;
+    private final long expiresAt;
+    private final byte[] signature;
+
+    public AccessTicket(long grantId, String username, String fileName, Operation operation,
+                        List<String> nodeNames, long expiresAt, byte[] signature) {
+        this.grantId = grantId;
+        this.username = username;
+        this.fileName = fileName;
+        this.operation = operation;
+        this.nodeNames = Collections.unmodifiableList(nodeNames);
+        this.expiresAt = expiresAt;
+        this.signature = signature;
+    }
+
+    public long getGrantId() {
+        return grantId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public List<String> getNodeNames() {
+        return nodeNames;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public byte[] getSignature() {
+        return signature;
+    }
+
+    @Override
+    public String toString() {
+        return operation + " " + fileName + " for " + username + " on " + nodeNames + " (grant " + grantId + ")";
+    }
+}
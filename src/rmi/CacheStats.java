@@ -0,0 +1,59 @@
+package rmi;
+
+import java.io.Serializable;
+
+public class CacheStats implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long bytes;
+    private final long maxBytes;
+    private final int entries;
+
+    public CacheStats(long hits, long misses, long evictions, long bytes, long maxBytes, int entries) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.bytes = bytes;
+        this.maxBytes = maxBytes;
+        this.entries = entries;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    public double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        if (maxBytes == 0) return "cache off";
+        return String.format("cache %d entries, %d/%dMB, %.1f%% hit (%d/%d), evictions %d",
+                entries, bytes / (1024 * 1024), maxBytes / (1024 * 1024), 100 * getHitRatio(), hits, hits + misses, evictions);
+    }
+}
@@ -4,10 +4,12 @@ import auth.User;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
+import java.util.Map;
 
 
 public interface CoordinatorService extends Remote {
-    void registerNode(String nodeName, FileService nodeService) throws RemoteException;
+    void registerNode(String nodeName, FileService nodeService, DirectFileService directService) throws RemoteException;
+    boolean heartbeat(String nodeName, NodeStats stats) throws RemoteException;
     boolean registerUser(User user) throws RemoteException;
     String login(String username, String password) throws RemoteException;
     User getUserByToken(String token) throws RemoteException;
@@ -17,9 +19,31 @@ public interface CoordinatorService extends Remote {
     boolean writeFile(String token, String fileName, byte[] data) throws RemoteException;
     boolean deleteFile(String token, String fileName) throws RemoteException;
     boolean editFile(String token, String filename, byte[] newData) throws RemoteException;
+    boolean applyPatch(String token, String fileName, long baseVersion, List<PatchOp> ops) throws RemoteException;
+    long getFileVersion(String token, String fileName) throws RemoteException;
+
+    List<FileResult> readFiles(String token, List<String> fileNames) throws RemoteException;
+    List<FileResult> writeFiles(String token, Map<String, byte[]> files) throws RemoteException;
+    List<FileResult> deleteFiles(String token, List<String> fileNames) throws RemoteException;
+
+    TransferInfo openRead(String token, String fileName) throws RemoteException;
+    byte[] readChunk(String token, String handle, long offset, int length) throws RemoteException;
+    TransferInfo openWrite(String token, String fileName) throws RemoteException;
+    void writeChunk(String token, String handle, long offset, byte[] data) throws RemoteException;
+    boolean commitWrite(String token, String handle) throws RemoteException;
+    void closeTransfer(String token, String handle) throws RemoteException;
+
+    AccessGrant authorizeRead(String token, String fileName) throws RemoteException;
+    AccessGrant authorizeWrite(String token, String fileName) throws RemoteException;
+    boolean confirmWrite(String token, AccessTicket ticket, List<String> nodeNames, long size) throws RemoteException;
+    Map<String, AccessGrant> authorizeSyncWrites(AccessTicket proof, List<String> fileNames) throws RemoteException;
+    boolean confirmSyncWrite(AccessTicket proof, AccessTicket ticket, List<String> nodeNames, long size) throws RemoteException;
 
     byte[] requestFile(String token, String filename) throws RemoteException;
-    List<FileService> getHealthyNodes() throws RemoteException;
+    List<FileInfo> searchFiles(String token, String pattern) throws RemoteException;
+    List<DirectFileService> getHealthyNodes() throws RemoteException;
+    List<DirectFileService> getReplicaNodes(String fileName) throws RemoteException;
+    Map<String, List<String>> getReplicaOwners(List<String> fileNames) throws RemoteException;
 
 
     void logout(String token) throws RemoteException;
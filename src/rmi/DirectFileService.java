@@ -0,0 +1,24 @@
+package rmi;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+// What a node exposes to anyone outside the coordinator: every read or write needs a ticket, and the
+// chunk calls only accept upload handles that openWrite(ticket) handed out.
+public interface DirectFileService extends Remote {
+    byte[] readFile(AccessTicket ticket) throws RemoteException;
+
+    byte[] readRange(AccessTicket ticket, long offset, int length) throws RemoteException;
+
+    void writeFile(AccessTicket ticket, byte[] data) throws RemoteException;
+
+    String openWrite(AccessTicket ticket) throws RemoteException;
+
+    void writeChunk(String handle, long offset, byte[] data) throws RemoteException;
+
+    void commitWrite(String handle) throws RemoteException;
+
+    void abortWrite(String handle) throws RemoteException;
+
+    String getNodeName() throws RemoteException;
+}
@@ -0,0 +1,52 @@
+package rmi;
+
+import java.io.Serializable;
+
+public class FileResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String fileName;
+    private final boolean success;
+    private final byte[] data;
+    private final String error;
+
+    private FileResult(String fileName, boolean success, byte[] data, String error) {
+        this.fileName = fileName;
+        this.success = success;
+        this.data = data;
+        this.error = error;
+    }
+
+    public static FileResult ok(String fileName, byte[] data) {
+        return new FileResult(fileName, true, data, null);
+    }
+
+    public static FileResult ok(String fileName) {
+        return new FileResult(fileName, true, null, null);
+    }
+
+    public static FileResult failed(String fileName, String error) {
+        return new FileResult(fileName, false, null, error);
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return fileName + (success ? " OK" : " FAILED: " + error);
+    }
+}
@@ -3,10 +3,18 @@ package rmi;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
+import java.util.Map;
 
+// Unticketed node operations. Only the coordinator holds this stub; clients get DirectFileService instead.
 public interface FileService extends Remote {
     List<String> listFiles() throws RemoteException;
 
+    List<FileInfo> listFileInfo() throws RemoteException;
+
+    List<FileInfo> listFilesPage(String startAfter, int limit) throws RemoteException;
+
+    List<FileInfo> listFilesByPrefix(String prefix, String startAfter, int limit) throws RemoteException;
+
     byte[] readFile(String fileName) throws RemoteException;
 
     void writeFile(String fileName, byte[] data) throws RemoteException;
@@ -15,5 +23,30 @@ public interface FileService extends Remote {
 
     boolean fileExists(String fileName) throws RemoteException;
 
+    List<FileResult> readFiles(List<String> fileNames) throws RemoteException;
+
+    List<FileResult> writeFiles(Map<String, byte[]> files) throws RemoteException;
+
+    List<FileResult> deleteFiles(List<String> fileNames) throws RemoteException;
+
+    byte[] readRange(String fileName, long offset, int length) throws RemoteException;
+
+    String openWrite(String fileName) throws RemoteException;
+
+    void writeChunk(String handle, long offset, byte[] data) throws RemoteException;
+
+    void commitWrite(String handle) throws RemoteException;
+
+    void abortWrite(String handle) throws RemoteException;
+
+    long applyPatch(String fileName, long baseSize, long baseModified, List<PatchOp> ops) throws RemoteException;
+
+    FileInfo statFile(String fileName) throws RemoteException;
+
+    // Grant of the ticketed write the file's current contents came from; -1 once anything else replaced them.
+    long appliedGrant(String fileName) throws RemoteException;
+
+    CacheStats getCacheStats() throws RemoteException;
+
     String getNodeName() throws RemoteException;
 }
@@ -0,0 +1,40 @@
+package rmi;
+
+import java.io.Serializable;
+
+public class NodeStats implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int activeRequests;
+    private final long totalRequests;
+    private final long usableSpace;
+    private final long timestamp;
+
+    public NodeStats(int activeRequests, long totalRequests, long usableSpace, long timestamp) {
+        this.activeRequests = activeRequests;
+        this.totalRequests = totalRequests;
+        this.usableSpace = usableSpace;
+        this.timestamp = timestamp;
+    }
+
+    public int getActiveRequests() {
+        return activeRequests;
+    }
+
+    public long getTotalRequests() {
+        return totalRequests;
+    }
+
+    public long getUsableSpace() {
+        return usableSpace;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "active=" + activeRequests + ", total=" + totalRequests + ", free=" + (usableSpace / (1024 * 1024)) + "MB";
+    }
+}
@@ -0,0 +1,54 @@
+package rmi;
+
+import java.io.Serializable;
+
+// Line-level edit; ops in a patch apply in order, each against the result of the previous one.
+public class PatchOp implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Type { INSERT, DELETE, REPLACE, APPEND }
+
+    private final Type type;
+    private final int line;
+    private final String text;
+
+    private PatchOp(Type type, int line, String text) {
+        this.type = type;
+        this.line = line;
+        this.text = text;
+    }
+
+    public static PatchOp insert(int line, String text) {
+        return new PatchOp(Type.INSERT, line, text);
+    }
+
+    public static PatchOp delete(int line) {
+        return new PatchOp(Type.DELETE, line, null);
+    }
+
+    public static PatchOp replace(int line, String text) {
+        return new PatchOp(Type.REPLACE, line, text);
+    }
+
+    public static PatchOp append(String text) {
+        return new PatchOp(Type.APPEND, -1, text);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    // Zero-based; unused for APPEND.
+    public int getLine() {
+        return line;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return type + (type == Type.APPEND ? "" : " " + line) + (text == null ? "" : " \"" + text + "\"");
+    }
+}
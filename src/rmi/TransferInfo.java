@@ -0,0 +1,46 @@
+package rmi;
+
+import java.io.Serializable;
+
+public class TransferInfo implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String handle;
+    private final String fileName;
+    private final long size;
+    private final long version;
+    private final int chunkSize;
+
+    public TransferInfo(String handle, String fileName, long size, long version, int chunkSize) {
+        this.handle = handle;
+        this.fileName = fileName;
+        this.size = size;
+        this.version = version;
+        this.chunkSize = chunkSize;
+    }
+
+    public String getHandle() {
+        return handle;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    @Override
+    public String toString() {
+        return fileName + " (" + size + " bytes, v" + version + ", chunk " + chunkSize + ")";
+    }
+}
@@ -0,0 +1,228 @@
+package sync;
+
+import auth.TicketSigner;
+import rmi.AccessGrant;
+import rmi.AccessTicket;
+import rmi.CoordinatorService;
+import rmi.DirectFileService;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.rmi.RemoteException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Pushes staged files to their ring owners. Each owner gets its own bounded pool, so one slow node only
+// delays its own queue; files are read from disk per transfer, whole up to one chunk and as a chunked
+// upload above that, and every file x node transfer retries on its own. Write grants come from the
+// coordinator like any client's, so nodes order them against client writes and the copies are confirmed into
+// the catalog; the shared secret only proves to the coordinator that the request comes from the sync server.
+class Distribution {
+
+    private final CoordinatorService coordinator;
+    private final int perNode;
+    private final int attempts;
+    private final int chunkBytes;
+    private final long retryDelayMs;
+
+    // Grants live for the coordinator's ticket TTL, so they are requested a window at a time, just before
+    // that window is queued, and the next window waits until this one is done.
+    private static final int WINDOW_FILES = Integer.getInteger("sync.distributeWindowFiles", 256);
+    private static final long WINDOW_BYTES = Long.getLong("sync.distributeWindowBytes", 256L * 1024 * 1024);
+    private static final long PROOF_TTL_MS = 60 * 1000;
+
+    private final TicketSigner tickets = TicketSigner.fromSystemProperties();
+    private final Map<String, ExecutorService> nodePools = new HashMap<>();
+    private final AtomicLong finished = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong transfers = new AtomicLong();
+    // Files each node confirmed, whether or not every other owner got them too.
+    private final Map<String, Set<String>> deliveredTo = new ConcurrentHashMap<>();
+
+    Distribution(CoordinatorService coordinator, int perNode, int attempts, int chunkBytes, long retryDelayMs) {
+        this.coordinator = coordinator;
+        this.perNode = perNode;
+        this.attempts = attempts;
+        this.chunkBytes = chunkBytes;
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    // Returns the files that reached every node of their grant and were confirmed to the coordinator.
+    Set<String> run(Map<String, Path> files) throws RemoteException {
+        long started = System.currentTimeMillis();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(daemonThreads("distribute-progress"));
+        reporter.scheduleAtFixedRate(() -> System.out.println("[Distribute] " + progress(started)), 2, 2, TimeUnit.SECONDS);
+
+        Set<String> delivered = ConcurrentHashMap.newKeySet();
+        List<String> window = new ArrayList<>();
+        long windowBytes = 0;
+        try {
+            for (Map.Entry<String, Path> file : files.entrySet()) {
+                window.add(file.getKey());
+                windowBytes += sizeOf(file.getValue());
+                if (window.size() >= WINDOW_FILES || windowBytes >= WINDOW_BYTES) {
+                    distributeWindow(window, files, delivered);
+                    window.clear();
+                    windowBytes = 0;
+                }
+            }
+            if (!window.isEmpty()) distributeWindow(window, files, delivered);
+        } finally {
+            reporter.shutdownNow();
+            nodePools.values().forEach(ExecutorService::shutdown);
+        }
+
+        System.out.println("[Distribute] Done: " + progress(started));
+        return delivered;
+    }
+
+    // Valid once run() returned.
+    Map<String, Set<String>> deliveredTo() {
+        return deliveredTo;
+    }
+
+    private void distributeWindow(List<String> window, Map<String, Path> files, Set<String> delivered) throws RemoteException {
+        AccessTicket proof = proof();
+        Map<String, AccessGrant> grants = coordinator.authorizeSyncWrites(proof, new ArrayList<>(window));
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (String fileName : window) {
+            pending.add(distribute(fileName, files.get(fileName), grants.get(fileName), proof, delivered));
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private CompletableFuture<Void> distribute(String fileName, Path path, AccessGrant grant, AccessTicket proof,
+                                               Set<String> delivered) {
+        if (grant == null) {
+            System.err.println("️ No write grant for " + fileName);
+            return CompletableFuture.completedFuture(null);
+        }
+        AccessTicket ticket = grant.getTicket();
+        List<String> nodeNames = ticket.getNodeNames();
+        List<CompletableFuture<Boolean>> pushes = new ArrayList<>();
+        for (int i = 0; i < nodeNames.size(); i++) {
+            DirectFileService node = grant.getNodes().get(i);
+            String nodeName = nodeNames.get(i);
+            transfers.incrementAndGet();
+            pushes.add(CompletableFuture.supplyAsync(() -> transfer(node, nodeName, ticket, path), poolFor(nodeName)));
+        }
+        return CompletableFuture.allOf(pushes.toArray(new CompletableFuture<?>[0])).thenRun(() -> {
+            List<String> written = new ArrayList<>();
+            for (int i = 0; i < pushes.size(); i++) {
+                if (pushes.get(i).join()) written.add(nodeNames.get(i));
+            }
+            if (written.isEmpty()) return;
+            try {
+                boolean confirmed = coordinator.confirmSyncWrite(proof, ticket, written, Files.size(path));
+                if (confirmed && written.size() == nodeNames.size()) delivered.add(fileName);
+            } catch (IOException e) {
+                System.err.println("️ Could not confirm " + fileName + " with the coordinator: " + e.getMessage());
+            }
+        });
+    }
+
+    // Signed with the shared secret; the coordinator only checks it, the grants it returns are its own.
+    private AccessTicket proof() {
+        return tickets.issue(AccessTicket.SYNC_USER, "*", AccessTicket.Operation.WRITE, Collections.<String>emptyList(), PROOF_TTL_MS);
+    }
+
+    private boolean transfer(DirectFileService node, String nodeName, AccessTicket ticket, Path path) {
+        String fileName = ticket.getFileName();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                long size = push(node, ticket, path);
+                deliveredTo.computeIfAbsent(nodeName, n -> ConcurrentHashMap.newKeySet()).add(fileName);
+                bytes.addAndGet(size);
+                finished.incrementAndGet();
+                System.out.println(" Synced " + fileName + " to node: " + nodeName);
+                return true;
+            } catch (IOException e) {
+                if (attempt >= attempts) {
+                    failed.incrementAndGet();
+                    finished.incrementAndGet();
+                    System.err.println("️ Failed to sync " + fileName + " to node: " + nodeName + " after " + attempt + " attempt(s): " + e.getMessage());
+                    return false;
+                }
+                retried.incrementAndGet();
+                try {
+                    Thread.sleep(retryDelayMs * attempt);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    failed.incrementAndGet();
+                    finished.incrementAndGet();
+                    return false;
+                }
+            }
+        }
+    }
+
+    private long push(DirectFileService node, AccessTicket ticket, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= chunkBytes) {
+                node.writeFile(ticket, readChunk(channel, 0, (int) size));
+                return size;
+            }
+
+            String handle = node.openWrite(ticket);
+            try {
+                for (long offset = 0; offset < size; offset += chunkBytes) {
+                    node.writeChunk(handle, offset, readChunk(channel, offset, (int) Math.min(chunkBytes, size - offset)));
+                }
+                node.commitWrite(handle);
+            } catch (IOException e) {
+                try {
+                    node.abortWrite(handle);
+                } catch (RemoteException ignored) {
+                    // The node drops idle uploads on its own.
+                }
+                throw e;
+            }
+            return size;
+        }
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static byte[] readChunk(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("File shrank while distributing at " + (offset + buffer.position()));
+            }
+        }
+        return buffer.array();
+    }
+
+    private ExecutorService poolFor(String nodeName) {
+        return nodePools.computeIfAbsent(nodeName, n -> Executors.newFixedThreadPool(perNode, daemonThreads("distribute-" + n)));
+    }
+
+    private String progress(long started) {
+        long elapsedMs = Math.max(1, System.currentTimeMillis() - started);
+        double mb = bytes.get() / (1024.0 * 1024);
+        return String.format("%d/%d transfers, %d failed, %d retried, %.1f MB in %d ms (%.1f MB/s)",
+                finished.get(), transfers.get(), failed.get(), retried.get(), mb, elapsedMs, mb * 1000 / elapsedMs);
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,208 @@
+package sync;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Predicate;
+
+// "section/name" -> size, mtime and SHA-256 of the content. Each section is summarized as a two-level Merkle
+// tree: entries hash into BUCKETS buckets by name, the buckets hash into the section root. Only names and
+// content hashes feed the tree, so identical replicas written at different times still compare equal.
+public class SyncManifest {
+
+    public static final int BUCKETS = 256;
+    public static final int HASH_BYTES = 32;
+
+    private static final int MAGIC = 0x4453534D;
+    // Files changed this close to a scan may change again within the same mtime tick, so they are rehashed.
+    private static final long RACY_MS = 2000;
+    private static final byte[] EMPTY = new byte[HASH_BYTES];
+
+    public static final class Entry {
+        private final long size;
+        private final long lastModified;
+        private final byte[] hash;
+
+        public Entry(long size, long lastModified, byte[] hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public byte[] getHash() {
+            return hash;
+        }
+
+        public boolean sameContent(Entry other) {
+            return other != null && Arrays.equals(hash, other.hash);
+        }
+    }
+
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+    private long scannedAt;
+
+    public static SyncManifest load(Path file) throws IOException {
+        SyncManifest manifest = new SyncManifest();
+        if (!Files.exists(file)) return manifest;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a sync manifest: " + file);
+            manifest.scannedAt = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                byte[] hash = new byte[HASH_BYTES];
+                in.readFully(hash);
+                manifest.entries.put(name, new Entry(size, lastModified, hash));
+            }
+        }
+        return manifest;
+    }
+
+    public void save(Path file) throws IOException {
+        Path part = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(part)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(scannedAt);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().size);
+                out.writeLong(entry.getValue().lastModified);
+                out.write(entry.getValue().hash);
+            }
+        }
+        Files.move(part, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Rebuilds the manifest from root/<section>/<file>, hashing only files whose size or mtime moved.
+    public static SyncManifest scan(Path root, SyncManifest previous, Predicate<Path> skip) throws IOException {
+        SyncManifest manifest = new SyncManifest();
+        manifest.scannedAt = System.currentTimeMillis();
+        try (DirectoryStream<Path> sections = Files.newDirectoryStream(root)) {
+            for (Path section : sections) {
+                if (!Files.isDirectory(section)) continue;
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(section)) {
+                    for (Path file : files) {
+                        if (!Files.isRegularFile(file) || skip.test(file)) continue;
+                        String name = section.getFileName() + "/" + file.getFileName();
+                        long size = Files.size(file);
+                        long lastModified = Files.getLastModifiedTime(file).toMillis();
+
+                        Entry known = previous.entries.get(name);
+                        boolean reusable = known != null && known.size == size && known.lastModified == lastModified
+                                && lastModified < previous.scannedAt - RACY_MS;
+                        manifest.entries.put(name, reusable ? known : new Entry(size, lastModified, hash(file)));
+                    }
+                }
+            }
+        }
+        return manifest;
+    }
+
+    public static byte[] hash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer.clear()) >= 0) {
+                digest.update(buffer.flip());
+            }
+        }
+        return digest.digest();
+    }
+
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    public void put(String name, Entry entry) {
+        entries.put(name, entry);
+    }
+
+    public void remove(String name) {
+        entries.remove(name);
+    }
+
+    public void removeSection(String section) {
+        sectionEntries(section).clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Set<String> sections() {
+        Set<String> sections = new TreeSet<>();
+        for (String name : entries.keySet()) {
+            sections.add(sectionOf(name));
+        }
+        return sections;
+    }
+
+    public byte[] root(String section) {
+        MessageDigest digest = sha256();
+        for (byte[] bucket : buckets(section)) {
+            digest.update(bucket);
+        }
+        return digest.digest();
+    }
+
+    public byte[][] buckets(String section) {
+        MessageDigest[] digests = new MessageDigest[BUCKETS];
+        for (Map.Entry<String, Entry> entry : sectionEntries(section).entrySet()) {
+            int bucket = bucketOf(entry.getKey());
+            if (digests[bucket] == null) digests[bucket] = sha256();
+            digests[bucket].update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            digests[bucket].update((byte) 0);
+            digests[bucket].update(entry.getValue().hash);
+        }
+        byte[][] buckets = new byte[BUCKETS][];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = digests[i] == null ? EMPTY : digests[i].digest();
+        }
+        return buckets;
+    }
+
+    public SortedMap<String, Entry> bucket(String section, int bucket) {
+        SortedMap<String, Entry> matches = new TreeMap<>();
+        for (Map.Entry<String, Entry> entry : sectionEntries(section).entrySet()) {
+            if (bucketOf(entry.getKey()) == bucket) matches.put(entry.getKey(), entry.getValue());
+        }
+        return matches;
+    }
+
+    public static String sectionOf(String name) {
+        return name.substring(0, name.indexOf('/'));
+    }
+
+    private SortedMap<String, Entry> sectionEntries(String section) {
+        // '0' sorts right after '/', so this is exactly the names under "section/".
+        return entries.subMap(section + "/", section + "0");
+    }
+
+    private static int bucketOf(String name) {
+        return Math.floorMod(name.hashCode(), BUCKETS);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+}
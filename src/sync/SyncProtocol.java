@@ -0,0 +1,141 @@
+package sync;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32C;
+
+// One connection per node folder. After HELLO ([int MAGIC][int VERSION]) both sides exchange frames
+// [int length][byte type][payload]; a FILE frame is followed by the file body.
+//
+// Negotiation, one round trip each, narrows a node's manifest down to the files the server lacks:
+//   SECTIONS node {section, root}*     -> DIFF_SECTIONS {section}*
+//   BUCKETS {section, hash x BUCKETS}* -> DIFF_BUCKETS {section, {bucket}*}*
+//   ENTRIES {name, size, mtime, hash}* -> WANT {name}*          (repeated per ENTRIES_PER_FRAME entries)
+// The server diffs against its record of what that node held after the last session or distribution, so
+// an unchanged node matches at the section roots.
+// Transfer then pipelines FILE [seq, section, name, length, mtime, crc32c] frames up to WINDOW unacknowledged;
+// the server answers ACK {seq, status}* every ACK_BATCH files and on every FLUSH. Closing ends the session.
+public final class SyncProtocol {
+
+    public static final int PORT = 5000;
+    public static final int MAGIC = 0x44535359;
+    public static final int VERSION = 3;
+
+    public static final byte SECTIONS = 1;
+    public static final byte DIFF_SECTIONS = 2;
+    public static final byte BUCKETS = 3;
+    public static final byte DIFF_BUCKETS = 4;
+    public static final byte ENTRIES = 5;
+    public static final byte WANT = 6;
+    public static final byte FILE = 7;
+    public static final byte FLUSH = 8;
+    public static final byte ACK = 9;
+
+    public static final byte OK = 0;
+    public static final byte BAD_CHECKSUM = 1;
+    public static final byte FAILED = 2;
+
+    public static final int ACK_BATCH = 64;
+    // Files a client may have unacknowledged; must stay above ACK_BATCH or both sides would wait on each other.
+    public static final int WINDOW = 4 * ACK_BATCH;
+    public static final int ENTRIES_PER_FRAME = 1000;
+    public static final int MAX_FRAME = 1024 * 1024;
+
+    private static final int CHECKSUM_BUFFER = 64 * 1024;
+
+    public static final class Frame {
+        private final byte type;
+        private final DataInputStream payload;
+
+        Frame(byte type, DataInputStream payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+
+        public byte getType() {
+            return type;
+        }
+
+        public DataInputStream getPayload() {
+            return payload;
+        }
+    }
+
+    private SyncProtocol() {
+    }
+
+    public static void writeHello(WritableByteChannel channel) throws IOException {
+        writeFully(channel, ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION).flip());
+    }
+
+    public static boolean readHello(ReadableByteChannel channel) throws IOException {
+        ByteBuffer hello = ByteBuffer.allocate(8);
+        if (!readFully(channel, hello)) return false;
+        hello.flip();
+        return hello.getInt() == MAGIC && hello.getInt() == VERSION;
+    }
+
+    public static void writeFrame(WritableByteChannel channel, byte type, byte[] payload) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(5 + payload.length).putInt(1 + payload.length).put(type).put(payload);
+        writeFully(channel, frame.flip());
+    }
+
+    // Returns null on a clean end of stream between frames.
+    public static Frame readFrame(ReadableByteChannel channel) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        if (!readFully(channel, length)) return null;
+        int frameLength = length.flip().getInt();
+        if (frameLength <= 0 || frameLength > MAX_FRAME) throw new IOException("Bad frame length " + frameLength);
+
+        ByteBuffer body = ByteBuffer.allocate(frameLength);
+        if (!readFully(channel, body)) throw new EOFException("Connection closed mid-frame");
+        byte[] bytes = body.array();
+        return new Frame(bytes[0], new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1)));
+    }
+
+    public static Frame expect(ReadableByteChannel channel, byte type) throws IOException {
+        Frame frame = readFrame(channel);
+        if (frame == null) throw new EOFException("Sync peer closed the connection");
+        if (frame.getType() != type) throw new IOException("Expected frame " + type + " but got " + frame.getType());
+        return frame;
+    }
+
+    public static long checksum(FileChannel channel, long size) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(CHECKSUM_BUFFER, Math.max(size, 1)));
+        for (long position = 0; position < size; ) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new EOFException("File shrank while checksumming at " + position + " of " + size);
+            position += read;
+            buffer.flip();
+            crc.update(buffer);
+        }
+        return crc.getValue();
+    }
+
+    // Returns false on a clean end of stream before the first byte.
+    public static boolean readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        boolean started = false;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (!started) return false;
+                throw new EOFException("Connection closed mid-frame");
+            }
+            started = true;
+        }
+        return true;
+    }
+
+    public static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package sync;
+
+// A run starts with the first file after a quiet period and is reported once nothing has arrived for quietMs.
+class SyncRunStats {
+
+    private final long quietMs;
+    private long runStart;
+    private long lastActivity;
+    private long files;
+    private long bytes;
+    private long failures;
+    private boolean active;
+
+    SyncRunStats(long quietMs) {
+        this.quietMs = quietMs;
+    }
+
+    synchronized void received(long fileBytes) {
+        touch();
+        files++;
+        bytes += fileBytes;
+    }
+
+    synchronized void failed() {
+        touch();
+        failures++;
+    }
+
+    // Returns the summary of a run that has gone quiet, or null while one is still in progress.
+    synchronized String finishIfQuiet(long now) {
+        if (!active || now - lastActivity < quietMs) return null;
+        active = false;
+        long elapsedMs = Math.max(1, lastActivity - runStart);
+        double mb = bytes / (1024.0 * 1024);
+        return String.format("%d file(s), %.1f MB in %d ms (%.1f files/s, %.1f MB/s), %d failed",
+                files, mb, elapsedMs, files * 1000.0 / elapsedMs, mb * 1000 / elapsedMs, failures);
+    }
+
+    private void touch() {
+        long now = System.currentTimeMillis();
+        if (!active) {
+            active = true;
+            runStart = now;
+            files = 0;
+            bytes = 0;
+            failures = 0;
+        }
+        lastActivity = now;
+    }
+}
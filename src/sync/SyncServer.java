@@ -1,119 +1,456 @@
 package sync;
 
+import auth.TicketSigner;
 import node.SyncClient;
+import node.Uploads;
 import rmi.CoordinatorService;
-import rmi.FileService;
+import rmi.DirectFileService;
 
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.time.LocalTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
 
 public class SyncServer {
 
-    private static final int PORT = 5000;
+    private static final int PORT = SyncProtocol.PORT;
     private static final String SYNC_DIR = "sync-storage";
+    private static final int HANDLER_THREADS = Integer.getInteger("sync.handlerThreads", 32);
+    private static final int ACCEPT_BACKLOG = Integer.getInteger("sync.acceptBacklog", 1024);
+    private static final int READ_TIMEOUT_MS = Integer.getInteger("sync.readTimeoutMs", 30 * 1000);
+    private static final long RUN_QUIET_MS = Long.getLong("sync.runQuietMs", 3000);
+    private static final int DISTRIBUTE_PER_NODE = Integer.getInteger("sync.distributePerNode", 4);
+    private static final int DISTRIBUTE_ATTEMPTS = Integer.getInteger("sync.distributeAttempts", 3);
+    private static final int DISTRIBUTE_CHUNK_BYTES = Integer.getInteger("sync.distributeChunkBytes", 1024 * 1024);
+    private static final long DISTRIBUTE_RETRY_MS = Long.getLong("sync.distributeRetryMs", 500);
 
-    private static class FileVersion {
-        byte[] data;
-        long timestamp;
+    // What the nodes held after the last completed distribution; runs only ship files that differ from it.
+    private static final Path BASELINE_MANIFEST = Paths.get("sync-manifest");
+    // Per node, what it held after its last session or distribution. Negotiation diffs against this view, so
+    // a node that changed nothing matches at the section roots; the global baseline, the union over all
+    // nodes, never equals any single node's manifest once files are spread over ring owners.
+    private static final Path NODE_MANIFESTS = Paths.get("sync-manifests");
+    private static final Map<String, ReentrantLock> nodeViewLocks = new ConcurrentHashMap<>();
 
-        FileVersion(byte[] data, long timestamp) {
-            this.data = data;
-            this.timestamp = timestamp;
-        }
-    }
+    private static final SyncRunStats runStats = new SyncRunStats(RUN_QUIET_MS);
+    // Files received into sync-storage and not yet distributed, so a second node's older copy is not fetched.
+    private static final Map<String, SyncManifest.Entry> staged = new ConcurrentHashMap<>();
 
     public static void main(String[] args) {
+        // Distribution proves itself to the coordinator with the secret; a missing one should stop startup, not the nightly run.
+        try {
+            TicketSigner.fromSystemProperties();
+        } catch (IllegalStateException e) {
+            System.err.println("[SyncServer] " + e.getMessage());
+            System.exit(1);
+        }
         startSocketServer();
+        startRunReporter();
         startAutoSyncThread();
     }
 
+    // At most HANDLER_THREADS connections are open at once; beyond that the loop stops accepting and
+    // further clients wait in the listen backlog instead of each getting a thread. A handler spends its time
+    // in blocking file work (transferFrom into the part file, checksum, rename), so a selector would only
+    // move the same waits onto a worker pool; the read timeout keeps a stalled client from pinning a slot.
     private static void startSocketServer() {
         new Thread(() -> {
-            try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-                System.out.println("[SyncServer] Listening on port " + PORT + "...");
+            ExecutorService handlers = Executors.newFixedThreadPool(HANDLER_THREADS);
+            Semaphore slots = new Semaphore(HANDLER_THREADS);
+            try (ServerSocketChannel serverSocket = ServerSocketChannel.open()) {
+                serverSocket.bind(new InetSocketAddress(PORT), ACCEPT_BACKLOG);
+                System.out.println("[SyncServer] Listening on port " + PORT + " with " + HANDLER_THREADS + " handlers...");
                 while (true) {
-                    Socket clientSocket = serverSocket.accept();
-                    new Thread(() -> handleClient(clientSocket)).start();
+                    slots.acquire();
+                    SocketChannel clientSocket;
+                    try {
+                        clientSocket = serverSocket.accept();
+                    } catch (IOException e) {
+                        slots.release();
+                        throw e;
+                    }
+                    handlers.execute(() -> {
+                        try {
+                            handleClient(clientSocket);
+                        } finally {
+                            slots.release();
+                        }
+                    });
                 }
-            } catch (IOException e) {
+            } catch (IOException | InterruptedException e) {
                 System.err.println("[SyncServer] Error: " + e.getMessage());
+            } finally {
+                handlers.shutdown();
             }
         }).start();
     }
 
-    private static void handleClient(Socket socket) {
-        try (DataInputStream in = new DataInputStream(socket.getInputStream())) {
-            String section = in.readUTF();
-            String fileName = in.readUTF();
-            long fileLength = in.readLong();
+    private static void startRunReporter() {
+        Thread reporter = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(RUN_QUIET_MS / 2);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                String summary = runStats.finishIfQuiet(System.currentTimeMillis());
+                if (summary != null) System.out.println("[SyncServer] Sync run received " + summary);
+            }
+        }, "sync-run-reporter");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
 
-            byte[] fileData = new byte[(int) fileLength];
-            in.readFully(fileData);
+    private static void handleClient(SocketChannel socket) {
+        ReentrantLock viewLock = null;
+        try (socket) {
+            // Channel reads ignore SO_TIMEOUT, the socket's own stream honours it; replies still go out on the channel.
+            socket.socket().setSoTimeout(READ_TIMEOUT_MS);
+            socket.socket().setKeepAlive(true);
+            ReadableByteChannel input = Channels.newChannel(socket.socket().getInputStream());
+            if (!SyncProtocol.readHello(input)) {
+                System.err.println("[SyncServer] Rejected connection with unknown protocol from " + socket.getRemoteAddress());
+                return;
+            }
 
-            Path sectionPath = Paths.get(SYNC_DIR, section);
-            Files.createDirectories(sectionPath);
+            SyncManifest baseline = SyncManifest.load(BASELINE_MANIFEST);
+            String nodeName = null;
+            SyncManifest view = null;
+            Map<String, SyncManifest.Entry> offered = new HashMap<>();
+            ByteArrayOutputStream ackBytes = new ByteArrayOutputStream();
+            DataOutputStream acks = new DataOutputStream(ackBytes);
+            int pendingAcks = 0;
 
-            Path filePath = sectionPath.resolve(fileName);
-            Files.write(filePath, fileData);
+            SyncProtocol.Frame frame;
+            while ((frame = SyncProtocol.readFrame(input)) != null) {
+                DataInputStream in = frame.getPayload();
+                if (view == null && frame.getType() != SyncProtocol.SECTIONS) {
+                    throw new IOException("Expected SECTIONS first, got frame type " + frame.getType());
+                }
+                switch (frame.getType()) {
+                    case SyncProtocol.SECTIONS:
+                        if (view != null) throw new IOException("Duplicate SECTIONS frame");
+                        nodeName = readNodeName(in);
+                        // One session per node at a time, so two runs cannot interleave edits to its view.
+                        viewLock = nodeViewLocks.computeIfAbsent(nodeName, n -> new ReentrantLock());
+                        viewLock.lock();
+                        view = SyncManifest.load(nodeView(nodeName));
+                        SyncProtocol.writeFrame(socket, SyncProtocol.DIFF_SECTIONS, diffSections(view, in));
+                        break;
+                    case SyncProtocol.BUCKETS:
+                        SyncProtocol.writeFrame(socket, SyncProtocol.DIFF_BUCKETS, diffBuckets(view, in));
+                        break;
+                    case SyncProtocol.ENTRIES:
+                        SyncProtocol.writeFrame(socket, SyncProtocol.WANT, wantedEntries(baseline, view, offered, in));
+                        break;
+                    case SyncProtocol.FILE:
+                        long seq = in.readLong();
+                        String section = in.readUTF();
+                        String fileName = in.readUTF();
+                        long fileLength = in.readLong();
+                        long lastModified = in.readLong();
+                        long checksum = in.readLong();
+                        byte status = receiveFile(input, section, fileName, fileLength, lastModified, checksum);
+                        if (status == SyncProtocol.OK) recordStaged(section + "/" + fileName, offered, view, fileLength, lastModified);
 
-            System.out.println("[SyncServer] Received: " + section + "/" + fileName);
+                        acks.writeLong(seq);
+                        acks.writeByte(status);
+                        if (++pendingAcks == SyncProtocol.ACK_BATCH) {
+                            sendAcks(socket, ackBytes, pendingAcks);
+                            pendingAcks = 0;
+                        }
+                        break;
+                    case SyncProtocol.FLUSH:
+                        sendAcks(socket, ackBytes, pendingAcks);
+                        pendingAcks = 0;
+                        break;
+                    default:
+                        throw new IOException("Unknown frame type " + frame.getType());
+                }
+            }
+            if (view != null) {
+                Files.createDirectories(NODE_MANIFESTS);
+                view.save(nodeView(nodeName));
+            }
+        } catch (SocketTimeoutException e) {
+            System.err.println("[SyncServer] Closing connection idle for " + READ_TIMEOUT_MS + " ms");
         } catch (IOException e) {
             System.err.println("[SyncServer] Client error: " + e.getMessage());
+        } finally {
+            if (viewLock != null) viewLock.unlock();
         }
     }
 
+    private static String readNodeName(DataInputStream in) throws IOException {
+        String nodeName = in.readUTF();
+        if (!nodeName.matches("[A-Za-z0-9_-][A-Za-z0-9._-]*")) throw new IOException("Invalid node name: " + nodeName);
+        return nodeName;
+    }
+
+    private static Path nodeView(String nodeName) {
+        return NODE_MANIFESTS.resolve(nodeName);
+    }
+
+    // Sections the node no longer has are dropped from its view here; the rest is settled bucket by bucket.
+    private static byte[] diffSections(SyncManifest view, DataInputStream in) throws IOException {
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(reply);
+        List<String> differing = new ArrayList<>();
+        Set<String> present = new HashSet<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            String section = in.readUTF();
+            present.add(section);
+            if (!Arrays.equals(readHash(in), view.root(section))) differing.add(section);
+        }
+        for (String section : view.sections()) {
+            if (!present.contains(section)) view.removeSection(section);
+        }
+        out.writeInt(differing.size());
+        for (String section : differing) {
+            out.writeUTF(section);
+        }
+        return reply.toByteArray();
+    }
+
+    // The node sends every entry of a differing bucket next, so those buckets are cleared from its view and
+    // refilled from the ENTRIES frames.
+    private static byte[] diffBuckets(SyncManifest view, DataInputStream in) throws IOException {
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(reply);
+        int sections = in.readInt();
+        out.writeInt(sections);
+        for (int i = 0; i < sections; i++) {
+            String section = in.readUTF();
+            byte[][] known = view.buckets(section);
+            List<Integer> differing = new ArrayList<>();
+            for (int bucket = 0; bucket < SyncManifest.BUCKETS; bucket++) {
+                if (!Arrays.equals(readHash(in), known[bucket])) differing.add(bucket);
+            }
+            for (int bucket : differing) {
+                for (String name : view.bucket(section, bucket).keySet()) {
+                    view.remove(name);
+                }
+            }
+            out.writeUTF(section);
+            out.writeInt(differing.size());
+            for (int bucket : differing) {
+                out.writeInt(bucket);
+            }
+        }
+        return reply.toByteArray();
+    }
+
+    // Whether to fetch is decided against everything distributed so far; what the node holds goes into its
+    // view now unless it is fetched, in which case only a successful receipt records it.
+    private static byte[] wantedEntries(SyncManifest baseline, SyncManifest view, Map<String, SyncManifest.Entry> offered,
+                                        DataInputStream in) throws IOException {
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(reply);
+        List<String> wanted = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            String name = in.readUTF();
+            SyncManifest.Entry entry = new SyncManifest.Entry(in.readLong(), in.readLong(), readHash(in));
+            if (isNewer(entry, baseline.get(name)) && isNewer(entry, stagedEntry(name))) {
+                offered.put(name, entry);
+                wanted.add(name);
+            } else {
+                view.put(name, entry);
+            }
+        }
+        out.writeInt(wanted.size());
+        for (String name : wanted) {
+            out.writeUTF(name);
+        }
+        return reply.toByteArray();
+    }
+
+    // Another replica's identical or later copy wins; nodes that merely received the last distribution
+    // hold the same content and are never asked to send it back.
+    private static boolean isNewer(SyncManifest.Entry offered, SyncManifest.Entry known) {
+        return known == null || !offered.sameContent(known) && offered.getLastModified() > known.getLastModified();
+    }
+
+    // Staged copies only count while the file in sync-storage is still the one recorded here.
+    private static SyncManifest.Entry stagedEntry(String name) {
+        SyncManifest.Entry entry = staged.get(name);
+        if (entry == null) return null;
+        try {
+            Path file = Paths.get(SYNC_DIR).resolve(name);
+            if (Files.size(file) == entry.getSize() && Files.getLastModifiedTime(file).toMillis() == entry.getLastModified()) {
+                return entry;
+            }
+        } catch (IOException e) {
+            // Gone with the last cleanup.
+        }
+        staged.remove(name, entry);
+        return null;
+    }
+
+    private static void recordStaged(String name, Map<String, SyncManifest.Entry> offered, SyncManifest view,
+                                     long size, long lastModified) {
+        SyncManifest.Entry entry = offered.remove(name);
+        if (entry != null && entry.getSize() == size && entry.getLastModified() == lastModified) {
+            staged.put(name, entry);
+            view.put(name, entry);
+        }
+    }
+
+    private static byte[] readHash(DataInputStream in) throws IOException {
+        byte[] hash = new byte[SyncManifest.HASH_BYTES];
+        in.readFully(hash);
+        return hash;
+    }
+
+    // Always consumes the whole body so the next frame starts where the client thinks it does. The body lands
+    // in a hidden part file that replaces the target in one rename, so concurrent senders of the same file and
+    // dropped connections never leave a mixed or truncated copy behind; memory use is independent of file size.
+    private static byte receiveFile(ReadableByteChannel socket, String section, String fileName, long fileLength,
+                                    long lastModified, long checksum) throws IOException {
+        Path filePath = Paths.get(SYNC_DIR, section).resolve(fileName);
+        Path part = filePath.resolveSibling(Uploads.PART_PREFIX + fileName + "." + UUID.randomUUID() + Uploads.PART_SUFFIX);
+        FileChannel opened;
+        try {
+            Files.createDirectories(filePath.getParent());
+            opened = FileChannel.open(part, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            skip(socket, fileLength);
+            runStats.failed();
+            System.err.println("[SyncServer] Cannot store " + section + "/" + fileName + ": " + e.getMessage());
+            return SyncProtocol.FAILED;
+        }
+
+        boolean intact;
+        try (FileChannel out = opened) {
+            for (long received = 0; received < fileLength; ) {
+                long n = out.transferFrom(socket, received, fileLength - received);
+                if (n <= 0) throw new EOFException("Connection closed after " + received + " of " + fileLength + " bytes");
+                received += n;
+            }
+            intact = SyncProtocol.checksum(out, fileLength) == checksum;
+        } catch (IOException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+
+        if (!intact) {
+            Files.deleteIfExists(part);
+            runStats.failed();
+            System.err.println("[SyncServer] Checksum mismatch, discarded: " + section + "/" + fileName);
+            return SyncProtocol.BAD_CHECKSUM;
+        }
+        try {
+            // The source mtime travels with the file so distribution and later runs can tell which copy is newest.
+            Files.setLastModifiedTime(part, FileTime.fromMillis(lastModified));
+            Files.move(part, filePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(part);
+            runStats.failed();
+            System.err.println("[SyncServer] Cannot store " + section + "/" + fileName + ": " + e.getMessage());
+            return SyncProtocol.FAILED;
+        }
+
+        runStats.received(fileLength);
+        System.out.println("[SyncServer] Received: " + section + "/" + fileName);
+        return SyncProtocol.OK;
+    }
+
+    private static void skip(ReadableByteChannel socket, long length) throws IOException {
+        ByteBuffer discard = ByteBuffer.allocate((int) Math.min(64 * 1024, Math.max(length, 1)));
+        for (long remaining = length; remaining > 0; ) {
+            discard.clear().limit((int) Math.min(discard.capacity(), remaining));
+            int n = socket.read(discard);
+            if (n < 0) throw new EOFException("Connection closed while skipping a rejected file");
+            remaining -= n;
+        }
+    }
+
+    private static void sendAcks(SocketChannel socket, ByteArrayOutputStream acks, int count) throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(4 + acks.size());
+        new DataOutputStream(frame).writeInt(count);
+        acks.writeTo(frame);
+        SyncProtocol.writeFrame(socket, SyncProtocol.ACK, frame.toByteArray());
+        acks.reset();
+    }
+
     public static void distributeToNodes() throws Exception {
         System.out.println("[SyncServer] Starting distribution...");
 
         Registry registry = LocateRegistry.getRegistry("localhost", 1099);
         CoordinatorService coordinator = (CoordinatorService) registry.lookup("Coordinator");
 
-        List<FileService> healthyNodes = coordinator.getHealthyNodes();
+        List<DirectFileService> healthyNodes = coordinator.getHealthyNodes();
         if (healthyNodes.size() < 3) {
             System.out.println("Skipping distribution: Not all 3 nodes are healthy.");
             return;
         }
 
-        Map<String, FileVersion> latestFiles = new HashMap<>();
+        if (!Files.isDirectory(Paths.get(SYNC_DIR))) {
+            System.out.println(" [SyncServer] Nothing changed since the last distribution.");
+            return;
+        }
 
-        Files.walk(Paths.get(SYNC_DIR))
-                .filter(Files::isRegularFile)
-                .forEach(path -> {
-                    try {
-                        String relativePath = Paths.get(SYNC_DIR).relativize(path).toString().replace("\\", "/");
-                        byte[] content = Files.readAllBytes(path);
-                        long lastModified = Files.getLastModifiedTime(path).toMillis();
+        Map<String, Path> stagedFiles = new TreeMap<>();
+        try (Stream<Path> paths = Files.walk(Paths.get(SYNC_DIR))) {
+            paths.filter(path -> Files.isRegularFile(path) && !Uploads.isPartFile(path))
+                    .forEach(path -> stagedFiles.put(Paths.get(SYNC_DIR).relativize(path).toString().replace("\\", "/"), path));
+        }
 
-                        FileVersion existing = latestFiles.get(relativePath);
-                        if (existing == null || lastModified > existing.timestamp) {
-                            latestFiles.put(relativePath, new FileVersion(content, lastModified));
-                        }
-                    } catch (IOException e) {
-                        System.err.println(" Error reading file: " + e.getMessage());
-                    }
-                });
+        Distribution distribution = new Distribution(coordinator, DISTRIBUTE_PER_NODE, DISTRIBUTE_ATTEMPTS,
+                DISTRIBUTE_CHUNK_BYTES, DISTRIBUTE_RETRY_MS);
+        Set<String> delivered = distribution.run(stagedFiles);
+
+        Map<String, SyncManifest.Entry> shipped = new HashMap<>();
+        for (Set<String> files : distribution.deliveredTo().values()) {
+            for (String fileName : files) {
+                if (shipped.containsKey(fileName)) continue;
+                Path path = stagedFiles.get(fileName);
+                shipped.put(fileName, new SyncManifest.Entry(Files.size(path),
+                        Files.getLastModifiedTime(path).toMillis(), SyncManifest.hash(path)));
+            }
+        }
 
-        for (Map.Entry<String, FileVersion> entry : latestFiles.entrySet()) {
-            String filePath = entry.getKey();
-            FileVersion version = entry.getValue();
+        // A file some owner missed stays out of the baseline, so the next run offers it again.
+        SyncManifest baseline = SyncManifest.load(BASELINE_MANIFEST);
+        for (String fileName : delivered) {
+            baseline.put(fileName, shipped.get(fileName));
+        }
+        baseline.save(BASELINE_MANIFEST);
 
-            for (FileService node : healthyNodes) {
-                try {
-                    node.writeFile(filePath, version.data);
-                    System.out.println(" Synced " + filePath + " to node: " + node.getNodeName());
-                } catch (Exception e) {
-                    System.err.println("️ Failed to sync " + filePath + " to node: " + node.getNodeName());
+        // Each node's view gains what it now holds, so its next scan matches at the roots again.
+        Files.createDirectories(NODE_MANIFESTS);
+        for (Map.Entry<String, Set<String>> node : distribution.deliveredTo().entrySet()) {
+            ReentrantLock viewLock = nodeViewLocks.computeIfAbsent(node.getKey(), n -> new ReentrantLock());
+            viewLock.lock();
+            try {
+                SyncManifest view = SyncManifest.load(nodeView(node.getKey()));
+                for (String fileName : node.getValue()) {
+                    view.put(fileName, shipped.get(fileName));
                 }
+                view.save(nodeView(node.getKey()));
+            } finally {
+                viewLock.unlock();
             }
         }
 
-        System.out.println(" [SyncServer] Distribution based on latest version completed.");
+        System.out.println(" [SyncServer] Distribution to ring owners completed (" + delivered.size() + " of "
+                + stagedFiles.size() + " changed file(s) on every owner).");
     }
 
     public static void deleteSyncStorage() throws IOException {